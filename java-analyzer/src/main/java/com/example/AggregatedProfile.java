@@ -0,0 +1,130 @@
+package com.example;
+
+import java.util.Map;
+import java.util.Set;
+
+// 单次遍历样本得到的聚合结果，火焰图、调用图和 top-N 报表共用
+// 聚合时所有 value 列一起累加，本对象的各个 getter 只呈现其中一列（默认由 default_sample_type 决定），
+// withSampleIndex 返回共享同一份数据、呈现另一列的视图
+public class AggregatedProfile {
+    private final SymbolResolver resolver;
+    private final StackTrie trie;
+    private final long[][] selfValues;
+    private final long[][] cumulativeValues;
+    private final boolean[] selfSeen;
+    private final boolean[] cumulativeSeen;
+    private final FrameValueMap selfTimes;
+    private final FrameValueMap cumulativeTimes;
+    private final Map<String, Set<String>> callEdges;
+    private final long[] totals;
+    private final int sampleIndex;
+    private final SourceListing listing;
+    private final SourceListing.Costs listingCosts;
+
+    AggregatedProfile(SymbolResolver resolver, StackTrie trie, long[][] selfValues, long[][] cumulativeValues,
+                      boolean[] selfSeen, boolean[] cumulativeSeen, Map<String, Set<String>> callEdges,
+                      long[] totals, int sampleIndex, SourceListing listing, SourceListing.Costs listingCosts) {
+        this.resolver = resolver;
+        this.trie = trie.withValueIndex(sampleIndex);
+        this.selfValues = selfValues;
+        this.cumulativeValues = cumulativeValues;
+        this.selfSeen = selfSeen;
+        this.cumulativeSeen = cumulativeSeen;
+        this.selfTimes = new FrameValueMap(resolver, selfValues[sampleIndex], selfSeen);
+        this.cumulativeTimes = new FrameValueMap(resolver, cumulativeValues[sampleIndex], cumulativeSeen);
+        this.callEdges = callEdges;
+        this.totals = totals;
+        this.sampleIndex = sampleIndex;
+        this.listing = listing;
+        this.listingCosts = listingCosts;
+    }
+
+    // 呈现第 sampleIndex 个 value 列的视图，不复制数据
+    public AggregatedProfile withSampleIndex(int sampleIndex) {
+        if (sampleIndex == this.sampleIndex) {
+            return this;
+        }
+        if (sampleIndex < 0 || sampleIndex >= totals.length) {
+            throw new IllegalArgumentException("value 列下标越界: " + sampleIndex);
+        }
+        return new AggregatedProfile(resolver, trie, selfValues, cumulativeValues, selfSeen, cumulativeSeen,
+            callEdges, totals, sampleIndex, listing, listingCosts);
+    }
+
+    public ProfileData getProfile() {
+        return resolver.getProfile();
+    }
+
+    public SymbolResolver getResolver() {
+        return resolver;
+    }
+
+    // 以帧下标为键的调用栈前缀树，getValue 等取当前 value 列
+    public StackTrie getTrie() {
+        return trie;
+    }
+
+    // 当前呈现的 value 列及其类型、单位
+    public int getSampleIndex() {
+        return sampleIndex;
+    }
+
+    public int getSampleTypeCount() {
+        return totals.length;
+    }
+
+    public String getSampleType() {
+        return getProfile().getSampleTypeName(sampleIndex);
+    }
+
+    public String getSampleUnit() {
+        return getProfile().getSampleUnitName(sampleIndex);
+    }
+
+    // 按当前列的单位和总量选择显示单位
+    public ValueFormatter getFormatter() {
+        return ValueFormatter.forUnit(getSampleUnit(), getTotalSamples());
+    }
+
+    // 只有调用栈顶部函数获得自身时间；只读视图，底层为按帧下标索引的 long[]
+    public Map<String, Long> getSelfTimes() {
+        return selfTimes;
+    }
+
+    // 调用栈中出现的每个函数获得样本的完整权重，递归出现多次时每个样本只计一次；只读视图
+    public Map<String, Long> getCumulativeTimes() {
+        return cumulativeTimes;
+    }
+
+    // 按帧下标读取自身时间，不经过装箱
+    public long getSelfValue(int frame) {
+        return selfTimes.getValue(frame);
+    }
+
+    public long getCumulativeValue(int frame) {
+        return cumulativeTimes.getValue(frame);
+    }
+
+    // 调用者 -> 被调用者集合（未过滤，不含自调用）
+    public Map<String, Set<String>> getCallEdges() {
+        return callEdges;
+    }
+
+    // 当前 value 列所有样本值之和
+    public long getTotalSamples() {
+        return totals[sampleIndex];
+    }
+
+    public long getTotal(int sampleIndex) {
+        return totals[sampleIndex];
+    }
+
+    // 聚合时设置了源码标注才有值，否则为 null
+    public SourceListing getSourceListing() {
+        return listing;
+    }
+
+    SourceListing.Costs getListingCosts() {
+        return listingCosts;
+    }
+}
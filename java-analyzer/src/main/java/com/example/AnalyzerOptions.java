@@ -0,0 +1,317 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// 命令行参数：第一个非选项参数为 profile 路径，其余为 --名称 值 形式的选项
+public class AnalyzerOptions {
+    private String profilePath = "../profiling-data/cpu.prof";
+    private String flameGraphPath = "../profiling-data/flamegraph.svg";
+    private String callGraphPath = "../profiling-data/callgraph.svg";
+    private String foldedPath;
+    private double minWidth = FlameGraphGenerator.DEFAULT_MIN_WIDTH;
+    private String batchInput;
+    private String outputDir = "../profiling-data/batch";
+    private String mergeInput;
+    private String mergeOutput = "../profiling-data/merged.prof";
+    private String diffBasePath;
+    private String diffFlameGraphPath = "../profiling-data/diff-flamegraph.svg";
+    private DiffFlameGraphGenerator.Normalization diffNormalization = DiffFlameGraphGenerator.Normalization.DURATION;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long memoryBudgetBytes = Runtime.getRuntime().maxMemory() / 2;
+    private int aggregateThreads = Runtime.getRuntime().availableProcessors();
+    private String sampleIndex;
+    private final List<String> labelFilters = new ArrayList<>();
+    private String groupBy;
+    private String focus;
+    private String ignore;
+    private String hide;
+    private String showFrom;
+    private String pruneFrom;
+    private boolean inlineFrames;
+    private SymbolResolver.Granularity granularity = SymbolResolver.Granularity.FUNCTIONS;
+    private String listRegex;
+    private String sourceRoot = "..";
+    private String storeDir;
+    private String ingestInput;
+    private long lastNanos;
+    private String from;
+    private String to;
+    private final Map<ProfileStore.Resolution, Long> retention = new EnumMap<>(ProfileStore.Resolution.class);
+    private int servePort = -1;
+    private String serveDir = "../profiling-data";
+    private String serveBind = "127.0.0.1";
+    private String cacheDir;
+    private long cacheMaxBytes = 1L << 30;
+
+    public static AnalyzerOptions parse(String[] args) {
+        AnalyzerOptions options = new AnalyzerOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                options.profilePath = arg;
+                continue;
+            }
+            // 不带参数值的开关
+            if (arg.equals("--inline")) {
+                options.inlineFrames = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("选项缺少参数值: " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--flamegraph": options.flameGraphPath = value; break;
+                case "--callgraph": options.callGraphPath = value; break;
+                case "--folded": options.foldedPath = value; break;
+                case "--minwidth": options.minWidth = Double.parseDouble(value); break;
+                case "--batch": options.batchInput = value; break;
+                case "--output-dir": options.outputDir = value; break;
+                case "--merge": options.mergeInput = value; break;
+                case "--merge-output": options.mergeOutput = value; break;
+                case "--diff": options.diffBasePath = value; break;
+                case "--diff-flamegraph": options.diffFlameGraphPath = value; break;
+                case "--diff-normalize": options.diffNormalization = parseNormalization(value); break;
+                case "--threads": options.threads = Math.max(1, Integer.parseInt(value)); break;
+                case "--memory-budget-mb": options.memoryBudgetBytes = Long.parseLong(value) << 20; break;
+                case "--aggregate-threads": options.aggregateThreads = Math.max(1, Integer.parseInt(value)); break;
+                case "--sample-index": options.sampleIndex = value; break;
+                case "--label-filter": options.labelFilters.add(value); break;
+                case "--group-by": options.groupBy = value; break;
+                case "--focus": options.focus = value; break;
+                case "--ignore": options.ignore = value; break;
+                case "--hide": options.hide = value; break;
+                case "--show-from": options.showFrom = value; break;
+                case "--prune-from": options.pruneFrom = value; break;
+                case "--granularity": options.granularity = parseGranularity(value); break;
+                case "--list": options.listRegex = value; break;
+                case "--source-root": options.sourceRoot = value; break;
+                case "--cache-dir": options.cacheDir = value; break;
+                case "--cache-max-mb": options.cacheMaxBytes = Long.parseLong(value) << 20; break;
+                case "--store": options.storeDir = value; break;
+                case "--ingest": options.ingestInput = value; break;
+                case "--last": options.lastNanos = parseDuration(value); break;
+                case "--from": options.from = value; break;
+                case "--to": options.to = value; break;
+                case "--retention": parseRetention(value, options.retention); break;
+                case "--serve": options.servePort = Integer.parseInt(value); break;
+                case "--serve-dir": options.serveDir = value; break;
+                case "--serve-bind": options.serveBind = value; break;
+                default: throw new IllegalArgumentException("未知选项: " + arg);
+            }
+        }
+        return options;
+    }
+
+    private static DiffFlameGraphGenerator.Normalization parseNormalization(String value) {
+        switch (value) {
+            case "duration": return DiffFlameGraphGenerator.Normalization.DURATION;
+            case "samples": return DiffFlameGraphGenerator.Normalization.SAMPLES;
+            default: throw new IllegalArgumentException("未知的归一化方式: " + value + "（可选 duration、samples）");
+        }
+    }
+
+    private static SymbolResolver.Granularity parseGranularity(String value) {
+        switch (value) {
+            case "functions": return SymbolResolver.Granularity.FUNCTIONS;
+            case "filefunctions": return SymbolResolver.Granularity.FILEFUNCTIONS;
+            case "lines": return SymbolResolver.Granularity.LINES;
+            case "addresses": return SymbolResolver.Granularity.ADDRESSES;
+            default: throw new IllegalArgumentException(
+                "未知的粒度: " + value + "（可选 functions、filefunctions、lines、addresses）");
+        }
+    }
+
+    // 时长写作数字加单位 s、m、h、d，例如 90s、10m、1h、7d
+    static long parseDuration(String value) {
+        if (value.length() >= 2 && value.substring(0, value.length() - 1).matches("\\d{1,9}")) {
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            switch (value.charAt(value.length() - 1)) {
+                case 's': return amount * 1_000_000_000L;
+                case 'm': return amount * 60_000_000_000L;
+                case 'h': return amount * 3_600_000_000_000L;
+                case 'd': return amount * 86_400_000_000_000L;
+                default: break;
+            }
+        }
+        throw new IllegalArgumentException("无法解析的时长: " + value + "（格式为数字加单位 s、m、h、d，例如 10m）");
+    }
+
+    // 各级汇总的保留期，例如 1m=1d,10m=7d,1h=90d，未列出的粒度使用默认值
+    private static void parseRetention(String value, Map<ProfileStore.Resolution, Long> retention) {
+        for (String entry : value.split(",")) {
+            int equals = entry.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("无法解析的保留期: " + entry + "（格式为 粒度=时长，例如 1m=1d）");
+            }
+            retention.put(ProfileStore.Resolution.fromLabel(entry.substring(0, equals).trim()),
+                parseDuration(entry.substring(equals + 1).trim()));
+        }
+    }
+
+    public String getProfilePath() {
+        return profilePath;
+    }
+
+    public String getFlameGraphPath() {
+        return flameGraphPath;
+    }
+
+    public String getCallGraphPath() {
+        return callGraphPath;
+    }
+
+    // 未指定时为 null，表示不导出折叠格式
+    public String getFoldedPath() {
+        return foldedPath;
+    }
+
+    // 火焰图中单独绘制的最小帧宽度（像素）
+    public double getMinWidth() {
+        return minWidth;
+    }
+
+    // 批量模式的输入：目录（其中所有 .prof 文件）或通配符，例如 ../profiling-data/*.prof
+    public String getBatchInput() {
+        return batchInput;
+    }
+
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    // 合并模式的输入，格式同 --batch；合并结果随后按单个 profile 分析
+    public String getMergeInput() {
+        return mergeInput;
+    }
+
+    // 差分模式的基线 profile，未指定时为 null；当前 profile 为位置参数
+    public String getDiffBasePath() {
+        return diffBasePath;
+    }
+
+    public String getDiffFlameGraphPath() {
+        return diffFlameGraphPath;
+    }
+
+    public DiffFlameGraphGenerator.Normalization getDiffNormalization() {
+        return diffNormalization;
+    }
+
+    // 合并后的 gzip 压缩 pprof 文件路径
+    public String getMergeOutput() {
+        return mergeOutput;
+    }
+
+    // 同时分析的 profile 数量上限
+    public int getThreads() {
+        return threads;
+    }
+
+    // 同时解码的 profile 预估内存总和上限
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    // 单个 profile 聚合时使用的线程数
+    public int getAggregateThreads() {
+        return aggregateThreads;
+    }
+
+    // 分析的 value 列：下标或 sample_type 名称（例如 inuse_space、delay），all 表示每列各输出一份 top-N；
+    // 未指定时为 null，使用 default_sample_type 或最后一列
+    public String getSampleIndex() {
+        return sampleIndex;
+    }
+
+    // 可重复指定的标签条件（key=value、key!=value、key~regex、key=lo:hi），全部满足的样本才参与分析
+    public List<String> getLabelFilters() {
+        return labelFilters;
+    }
+
+    // 按该标签的取值分组，每组输出一张火焰图和一份 top-N；未指定时为 null
+    public String getGroupBy() {
+        return groupBy;
+    }
+
+    // 是否把 Location 的每条 line（内联函数）展开为单独的帧，默认只取第一条
+    public boolean isInlineFrames() {
+        return inlineFrames;
+    }
+
+    // 聚合的帧粒度，默认按函数
+    public SymbolResolver.Granularity getGranularity() {
+        return granularity;
+    }
+
+    // 源码标注模式的函数名正则，未指定时为 null
+    public String getListRegex() {
+        return listRegex;
+    }
+
+    // 按 Function.filename 查找源文件的根目录，默认为仓库根目录
+    public String getSourceRoot() {
+        return sourceRoot;
+    }
+
+    // 时序存储目录，未指定时为 null
+    public String getStoreDir() {
+        return storeDir;
+    }
+
+    // 写入时序存储的 profile：单个文件、目录或通配符，未指定时为 null
+    public String getIngestInput() {
+        return ingestInput;
+    }
+
+    // 查询最近多长时间（纳秒），以存储中最新数据的时间为终点；未指定时为 0
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    // 查询范围的起止时间（ISO-8601，例如 2025-05-10T11:00:00Z），未指定时为 null
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public Map<ProfileStore.Resolution, Long> getRetention() {
+        return retention;
+    }
+
+    // HTTP 服务端口，0 表示任选空闲端口；未指定时为 -1，不启动服务
+    public int getServePort() {
+        return servePort;
+    }
+
+    // HTTP 服务可访问的 profile 目录，上传的 profile 保存在其下的 uploads 子目录
+    public String getServeDir() {
+        return serveDir;
+    }
+
+    // HTTP 服务监听的地址，默认只监听本机回环地址，0.0.0.0 表示所有网络接口
+    public String getServeBind() {
+        return serveBind;
+    }
+
+    // 解析结果的列式缓存目录，未指定 --cache-dir 时为 null，不读写缓存
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    // 缓存目录的总大小上限，超出时删除最久未用的缓存文件
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    // --focus、--ignore、--hide、--show-from、--prune-from 组成的帧变换，均未指定时为 null
+    public FrameFilter getFrameFilter() {
+        return FrameFilter.parse(focus, ignore, hide, showFrom, pruneFrom);
+    }
+}
@@ -0,0 +1,245 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+// 批量模式：并发分析一个目录或通配符匹配到的所有 profile
+// 同时运行的任务数由 --threads 限制；每个任务在解码前按文件大小预估内存并从预算中申请，
+// 预算用尽时后续任务阻塞等待，从而在内存上形成背压。
+// 每个 profile 的火焰图、调用图和 top-N 报表写入输出目录下的同名子目录，另生成汇总索引 index.txt
+public class BatchAnalyzer {
+    private static final Logger logger = Logger.getLogger(BatchAnalyzer.class.getName());
+    // gzip 压缩的 pprof 解码后在内存中的体积按压缩文件大小的这个倍数估算
+    private static final long EXPANSION_FACTOR = 8;
+
+    private final AnalyzerOptions options;
+
+    public BatchAnalyzer(AnalyzerOptions options) {
+        this.options = options;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        List<Path> inputs = findProfiles(options.getBatchInput());
+        Path outputDir = Paths.get(options.getOutputDir());
+        Files.createDirectories(outputDir);
+        logger.info("批量分析 " + inputs.size() + " 个 profile，输出到: " + outputDir);
+
+        int threads = options.getThreads();
+        // 内存预算以 KB 为单位换算成信号量许可
+        int budgetKb = (int) Math.min(Integer.MAX_VALUE, Math.max(1, options.getMemoryBudgetBytes() >> 10));
+        Semaphore slots = new Semaphore(threads);
+        Semaphore memory = new Semaphore(budgetKb);
+
+        List<String> names = assignOutputNames(inputs);
+        List<Future<Result>> futures = new ArrayList<>(inputs.size());
+        ExecutorService executor = newExecutor(threads);
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                Path profileOutput = outputDir.resolve(names.get(i));
+                // 在提交前获取并发槽位，避免数千个文件的任务同时排队占用内存
+                slots.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        return analyze(input, profileOutput, memory, budgetKb);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+
+            List<Result> results = new ArrayList<>(futures.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // analyze 自身已捕获分析错误，这里只会是意外的运行时异常
+                    throw new IOException(e.getCause());
+                }
+            }
+            writeIndex(outputDir.resolve("index.txt"), results);
+        } finally {
+            executor.shutdown();
+        }
+        logger.info("批量分析完成，汇总索引: " + outputDir.resolve("index.txt"));
+    }
+
+    private Result analyze(Path input, Path profileOutput, Semaphore memory, int budgetKb) {
+        long start = System.nanoTime();
+        int permits = 0;
+        try {
+            long estimatedKb = estimateMemory(input) >> 10;
+            int requested = (int) Math.max(1, Math.min(budgetKb, estimatedKb));
+            memory.acquire(requested);
+            // 只有真正获得许可后才记下，acquire 被中断时 finally 不会归还未获得的许可
+            permits = requested;
+
+            ProfileData profile = PprofAnalyzer.readProfile(input.toString(), options,
+                ProfileReader.threadsPerRead(options.getThreads()));
+            AggregatedProfile aggregate =
+                PprofAnalyzer.selectSampleType(PprofAnalyzer.aggregate(profile, options), options.getSampleIndex());
+
+            Files.createDirectories(profileOutput);
+            FlameGraphGenerator flameGraphGenerator =
+                new FlameGraphGenerator(aggregate, profileOutput.resolve("flamegraph.svg").toString());
+            flameGraphGenerator.setMinWidth(options.getMinWidth());
+            flameGraphGenerator.generateFlameGraph();
+            new CallGraphGenerator(aggregate, profileOutput.resolve("callgraph.svg").toString()).generateCallGraph();
+            try (PrintStream out = new PrintStream(Files.newOutputStream(profileOutput.resolve("top.txt")),
+                    false, StandardCharsets.UTF_8.name())) {
+                PprofAnalyzer.printTopReports(aggregate, options.getSampleIndex(), out, 10);
+            }
+            return Result.success(input, profileOutput, aggregate, elapsedMillis(start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.failure(input, profileOutput, "interrupted", elapsedMillis(start));
+        } catch (Exception e) {
+            logger.warning("分析 " + input + " 时出错: " + e.getMessage());
+            return Result.failure(input, profileOutput, String.valueOf(e.getMessage()), elapsedMillis(start));
+        } finally {
+            if (permits > 0) {
+                memory.release(permits);
+            }
+        }
+    }
+
+    private void writeIndex(Path indexPath, List<Result> results) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(indexPath), false, StandardCharsets.UTF_8.name())) {
+            out.println(String.format("%-8s %-14s %12s %8s %8s  %-40s %s",
+                "status", "type", "total", "stacks", "ms", "top flat", "profile"));
+            int failures = 0;
+            for (Result result : results) {
+                if (result.error != null) {
+                    failures++;
+                    out.println(String.format("%-8s %-14s %12s %8s %8d  %-40s %s  (%s)",
+                        "FAILED", "-", "-", "-", result.elapsedMillis, "-", result.input, result.error));
+                    continue;
+                }
+                out.println(String.format("%-8s %-14s %12s %8d %8d  %-40s %s -> %s",
+                    "OK", result.sampleType, result.total, result.distinctStacks, result.elapsedMillis,
+                    result.topFunction, result.input, result.output.getFileName()));
+            }
+            out.println();
+            out.println("共 " + results.size() + " 个 profile，失败 " + failures + " 个");
+        }
+    }
+
+    // 目录：其中所有 .prof 文件；含通配符：按 glob 匹配父目录中的文件；否则视为单个文件
+    static List<Path> findProfiles(String input) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        Path path = Paths.get(input);
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.prof")) {
+                stream.forEach(inputs::add);
+            }
+        } else if (input.contains("*") || input.contains("?") || input.contains("[") || input.contains("{")) {
+            Path parent = path.getParent() != null ? path.getParent() : Paths.get(".");
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(parent, path.getFileName().toString())) {
+                stream.forEach(inputs::add);
+            }
+        } else {
+            inputs.add(path);
+        }
+        inputs.removeIf(p -> !Files.isRegularFile(p));
+        inputs.sort(null);
+        return inputs;
+    }
+
+    // 以文件名（去掉扩展名）作为输出子目录名，重名时追加序号
+    private static List<String> assignOutputNames(List<Path> inputs) {
+        Set<String> used = new HashSet<>();
+        List<String> names = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            String base = input.getFileName().toString();
+            int dot = base.indexOf('.');
+            if (dot > 0) {
+                base = base.substring(0, dot);
+            }
+            String name = base;
+            for (int i = 2; !used.add(name); i++) {
+                name = base + "-" + i;
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    // 解码后的预估内存占用：gzip 文件按压缩大小的 EXPANSION_FACTOR 倍估算；
+    // 未压缩的文件直接映射解码，调用栈合并后的数据不超过文件本身，按文件大小估算
+    static long estimateMemory(Path input) throws IOException {
+        long size = Files.size(input);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            return ProfileReader.isGzip(channel) ? size * EXPANSION_FACTOR : size;
+        }
+    }
+
+    // JDK 21 及以上使用虚拟线程（并发数由信号量限制），否则使用固定大小的线程池
+    static ExecutorService newExecutor(int threads) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static class Result {
+        final Path input;
+        final Path output;
+        final String error;
+        final long elapsedMillis;
+        String sampleType;
+        String total;
+        int distinctStacks;
+        String topFunction = "-";
+
+        private Result(Path input, Path output, String error, long elapsedMillis) {
+            this.input = input;
+            this.output = output;
+            this.error = error;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        static Result success(Path input, Path output, AggregatedProfile aggregate, long elapsedMillis) {
+            Result result = new Result(input, output, null, elapsedMillis);
+            result.sampleType = aggregate.getSampleType();
+            result.total = aggregate.getFormatter().format(aggregate.getTotalSamples());
+            result.distinctStacks = aggregate.getTrie().getDistinctStacks();
+            long topSelf = -1;
+            for (Map.Entry<String, Long> entry : aggregate.getSelfTimes().entrySet()) {
+                if (entry.getValue() > topSelf) {
+                    topSelf = entry.getValue();
+                    result.topFunction = entry.getKey();
+                }
+            }
+            return result;
+        }
+
+        static Result failure(Path input, Path output, String error, long elapsedMillis) {
+            return new Result(input, output, error, elapsedMillis);
+        }
+    }
+}
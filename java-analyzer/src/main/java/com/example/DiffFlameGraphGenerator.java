@@ -0,0 +1,313 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// 差分火焰图：比较基线与当前两个 profile
+// 两个输入各自只聚合一次，其前缀树按函数名并入同一棵共享前缀树；帧宽度取当前 profile 的值，
+// 颜色表示相对基线的变化：红色为增加，蓝色为减少，颜色越深变化越大。
+// 基线先按 duration_nanos（或样本总数）归一化到当前 profile 的尺度再比较；两者应呈现同一 sample_type
+public class DiffFlameGraphGenerator {
+    // 归一化方式：按采集时长换算成相同时长下的值，或按样本总数换算成相同占比
+    public enum Normalization { DURATION, SAMPLES }
+
+    private final AggregatedProfile base;
+    private final AggregatedProfile current;
+    private final String outputPath;
+    private final Normalization normalization;
+    private double minWidth = FlameGraphGenerator.DEFAULT_MIN_WIDTH;
+
+    private final List<String> frameNames = new ArrayList<>();
+    private final StackTrie trie;
+    // 共享前缀树中每个节点的基线值，已换算为当前 profile 的样本单位
+    private final double[] baseValues;
+    private final double baseScale;
+    private final ValueFormatter formatter;
+
+    public DiffFlameGraphGenerator(AggregatedProfile base, AggregatedProfile current, String outputPath,
+                                   Normalization normalization) {
+        this.base = base;
+        this.current = current;
+        this.outputPath = outputPath;
+        this.normalization = normalization;
+        this.formatter = current.getFormatter();
+        this.baseScale = computeBaseScale();
+
+        Map<String, Integer> frameIds = new HashMap<>();
+        int[] currentFrames = mapFrames(current.getResolver(), frameIds);
+        int[] baseFrames = mapFrames(base.getResolver(), frameIds);
+        trie = new StackTrie(frameNames.size());
+        trie.graft(current.getTrie(), currentFrames, true);
+        StackTrie baseTrie = base.getTrie();
+        int[] baseNodes = trie.graft(baseTrie, baseFrames, false);
+        baseValues = new double[trie.getNodeCount()];
+        for (int node = 0; node < baseTrie.getNodeCount(); node++) {
+            baseValues[baseNodes[node]] += baseTrie.getValue(node) * baseScale;
+        }
+    }
+
+    public void setMinWidth(double minWidth) {
+        this.minWidth = minWidth;
+    }
+
+    // 基线的一个单位折合成当前 profile 的多少个单位
+    private double computeBaseScale() {
+        ProfileData baseProfile = base.getProfile();
+        ProfileData currentProfile = current.getProfile();
+        if (normalization == Normalization.DURATION
+                && baseProfile.getDurationNanos() > 0 && currentProfile.getDurationNanos() > 0) {
+            double durationRatio = (double) currentProfile.getDurationNanos() / baseProfile.getDurationNanos();
+            // 两个时间类单位不同（例如 microseconds 与 nanoseconds）时先统一单位
+            double baseNanos = ValueFormatter.nanosPerUnit(base.getSampleUnit());
+            double currentNanos = ValueFormatter.nanosPerUnit(current.getSampleUnit());
+            double unitRatio = baseNanos > 0 && currentNanos > 0 ? baseNanos / currentNanos : 1;
+            return durationRatio * unitRatio;
+        }
+        // 缺少 duration_nanos 时退化为按样本总数归一化
+        return base.getTotalSamples() > 0 ? (double) current.getTotalSamples() / base.getTotalSamples() : 0;
+    }
+
+    private int[] mapFrames(SymbolResolver resolver, Map<String, Integer> frameIds) {
+        int[] frameMap = new int[resolver.getFrameCount()];
+        for (int frame = 0; frame < frameMap.length; frame++) {
+            String name = resolver.getFrameName(frame);
+            Integer id = frameIds.get(name);
+            if (id == null) {
+                id = frameNames.size();
+                frameIds.put(name, id);
+                frameNames.add(name);
+            }
+            frameMap[frame] = id;
+        }
+        return frameMap;
+    }
+
+    public void generateFlameGraph() throws IOException {
+        long totalSamples = current.getTotalSamples();
+        int maxDepth = trie.getMaxDepth();
+
+        try (SvgWriter writer = SvgWriter.open(outputPath)) {
+            int width = 1200;
+            int frameHeight = 30;
+            int height = Math.max((maxDepth + 1) * frameHeight, 500);
+            int xpad = 10;
+            int titleHeight = 100;
+
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+            writer.write("<svg width=\"" + (width + 2 * xpad) + "\" height=\"" + (height + titleHeight) +
+                "\" version=\"1.1\" xmlns=\"http://www.w3.org/2000/svg\">\n");
+            writer.write("<style>\n");
+            writer.write(".title { font-size: 18px; font-weight: bold; font-family: Arial; }\n");
+            writer.write(".subtitle { font-size: 12px; font-family: Arial; fill: #666; }\n");
+            writer.write(".frame { transition: opacity 0.3s; cursor: pointer; }\n");
+            writer.write(".frame:hover { opacity: 0.8; }\n");
+            writer.write(".frame-text { font-size: 10px; font-family: Arial; pointer-events: none; fill: #222; }\n");
+            writer.write("</style>\n");
+
+            double baseTotal = baseValues[StackTrie.ROOT];
+            writer.write("<text x=\"" + xpad + "\" y=\"24\" class=\"title\">Differential Flame Graph</text>\n");
+            writer.write("<text x=\"" + xpad + "\" y=\"42\" class=\"subtitle\">当前: " + formatter.format(totalSamples)
+                + " | 基线归一化后: " + formatter.format(baseTotal) + " | sample_type: "
+                + current.getSampleType() + " | 归一化方式: "
+                + normalization.name().toLowerCase() + "</text>\n");
+            writer.write("<text x=\"" + xpad + "\" y=\"58\" class=\"subtitle\">宽度为当前 profile 的值；"
+                + "红色表示相对基线增加，蓝色表示减少，颜色越深变化越大</text>\n");
+
+            if (totalSamples > 0) {
+                double xscale = (double) width / totalSamples;
+                renderFlameGraph(writer, xpad, height + titleHeight - frameHeight, frameHeight, xscale);
+            }
+            writer.write("</svg>\n");
+        }
+    }
+
+    private static final byte[] FRAME_OPEN = SvgWriter.fragment("<g class=\"frame\">\n<rect x=\"");
+    private static final byte[] RECT_Y = SvgWriter.fragment("\" y=\"");
+    private static final byte[] RECT_WIDTH = SvgWriter.fragment("\" width=\"");
+    private static final byte[] RECT_FILL = SvgWriter.fragment("\" height=\"29.0\" fill=\"rgb(");
+    private static final byte[] COMMA = SvgWriter.fragment(",");
+    private static final byte[] RECT_STYLE = SvgWriter.fragment(")\" stroke=\"rgba(0,0,0,0.2)\" "
+        + "stroke-width=\"0.5\" rx=\"2\" ry=\"2\" >\n<title>");
+    private static final byte[] TITLE_CURRENT = SvgWriter.fragment("\n当前: ");
+    private static final byte[] TITLE_BASE = SvgWriter.fragment("\n基线: ");
+    private static final byte[] TITLE_DELTA = SvgWriter.fragment("\n变化: ");
+    private static final byte[] TITLE_CLOSE = SvgWriter.fragment("</title>\n</rect>\n");
+    private static final byte[] TEXT_X = SvgWriter.fragment("<text x=\"");
+    private static final byte[] TEXT_Y = SvgWriter.fragment("\" y=\"");
+    private static final byte[] TEXT_NAME = SvgWriter.fragment("\" class=\"frame-text\">");
+    private static final byte[] TEXT_CLOSE = SvgWriter.fragment("</text>\n");
+    private static final byte[] FRAME_CLOSE = SvgWriter.fragment("</g>\n");
+
+    // 与 FlameGraphGenerator 相同的显式栈先序遍历；窄于 minWidth 的兄弟节点合并为"其他"帧，
+    // 其基线值同样合并，仅出现在基线中的调用栈宽度为 0，只体现在文本报表里
+    private void renderFlameGraph(SvgWriter writer, double x, double y, double frameHeight,
+                                  double xscale) throws IOException {
+        int capacity = 64;
+        int[] nodeStack = new int[capacity];
+        int[] depthStack = new int[capacity];
+        double[] xStack = new double[capacity];
+        int top = 0;
+        double[] childXs = new double[16];
+
+        nodeStack[top] = StackTrie.ROOT;
+        depthStack[top] = 0;
+        xStack[top] = x;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int node = nodeStack[top];
+            int depth = depthStack[top];
+            double nodeX = xStack[top];
+
+            if (node != StackTrie.ROOT) {
+                writeFrame(writer, frameNames.get(trie.getFrame(node)), trie.getValue(node), baseValues[node],
+                    nodeX, y - (depth - 1) * frameHeight, frameHeight, xscale);
+            }
+
+            int childCount = trie.getChildCount(node);
+            if (childCount == 0) {
+                continue;
+            }
+            if (childCount > childXs.length) {
+                childXs = new double[Math.max(childCount, childXs.length * 2)];
+            }
+            double childX = nodeX;
+            int keptCount = 0;
+            long otherValue = 0;
+            double otherBase = 0;
+            int otherCount = 0;
+            for (int i = 0; i < childCount; i++) {
+                int child = trie.getChild(node, i);
+                long childValue = trie.getValue(child);
+                if (childValue * xscale < minWidth) {
+                    otherValue += childValue;
+                    otherBase += baseValues[child];
+                    otherCount++;
+                    continue;
+                }
+                childXs[keptCount++] = childX;
+                childX += childValue * xscale;
+            }
+            if (otherCount > 0 && otherValue * xscale >= minWidth) {
+                String otherName = "其他 (" + otherCount + " 个帧)";
+                writeFrame(writer, otherName, otherValue, otherBase, childX, y - depth * frameHeight,
+                    frameHeight, xscale);
+            }
+            childCount = keptCount;
+            if (top + childCount > nodeStack.length) {
+                capacity = Math.max(top + childCount, nodeStack.length * 2);
+                nodeStack = Arrays.copyOf(nodeStack, capacity);
+                depthStack = Arrays.copyOf(depthStack, capacity);
+                xStack = Arrays.copyOf(xStack, capacity);
+            }
+            for (int i = childCount - 1; i >= 0; i--) {
+                nodeStack[top] = trie.getChild(node, i);
+                depthStack[top] = depth + 1;
+                xStack[top] = childXs[i];
+                top++;
+            }
+        }
+    }
+
+    private void writeFrame(SvgWriter writer, String name, long value, double baseValue, double x, double y,
+                            double frameHeight, double xscale) throws IOException {
+        double frameWidth = value * xscale;
+        double delta = value - baseValue;
+        // 变化量相对于两者较大值的比例决定颜色深浅，新增或消失的帧为最深色
+        double intensity = Math.min(1.0, Math.abs(delta) / Math.max(Math.max(value, baseValue), 1e-9));
+        int light = (int) Math.round(235 - 175 * intensity);
+        int red = delta >= 0 ? 255 : light;
+        int blue = delta >= 0 ? light : 255;
+
+        writer.write(FRAME_OPEN).writeFixed(x, 2)
+            .write(RECT_Y).writeFixed(y, 2)
+            .write(RECT_WIDTH).writeFixed(frameWidth, 2)
+            .write(RECT_FILL).writeLong(red).write(COMMA).writeLong(light).write(COMMA).writeLong(blue)
+            .write(RECT_STYLE);
+        writer.writeEscaped(name).write(TITLE_CURRENT);
+        formatter.writeTo(writer, value);
+        writer.write(TITLE_BASE);
+        formatter.writeTo(writer, baseValue);
+        writer.write(TITLE_DELTA).write(delta >= 0 ? "+" : "");
+        formatter.writeTo(writer, delta);
+        writer.write(TITLE_CLOSE);
+
+        if (frameWidth > 25) {
+            writer.write(TEXT_X).writeFixed(x + 3, 2)
+                .write(TEXT_Y).writeFixed(y + frameHeight - 10, 2)
+                .write(TEXT_NAME).writeEscaped(name).write(TEXT_CLOSE);
+        }
+        writer.write(FRAME_CLOSE);
+    }
+
+    // 按 flat 和 cum 的变化量分别列出增加最多和减少最多的 count 个函数
+    public void printReport(PrintStream out, int count) {
+        out.println(String.format("\n差分报告: 当前 %s，基线归一化后 %s（sample_type: %s，归一化方式: %s）",
+            formatter.format(current.getTotalSamples()), formatter.format(baseValues[StackTrie.ROOT]),
+            current.getSampleType(), normalization.name().toLowerCase()));
+        printDeltas(out, "flat", base.getSelfTimes(), current.getSelfTimes(), count);
+        printDeltas(out, "cum", base.getCumulativeTimes(), current.getCumulativeTimes(), count);
+    }
+
+    private void printDeltas(PrintStream out, String kind, Map<String, Long> baseTimes,
+                             Map<String, Long> currentTimes, int count) {
+        Set<String> names = new HashSet<>(baseTimes.keySet());
+        names.addAll(currentTimes.keySet());
+        List<FunctionDelta> deltas = new ArrayList<>(names.size());
+        for (String name : names) {
+            double baseValue = baseTimes.getOrDefault(name, 0L) * baseScale;
+            long currentValue = currentTimes.getOrDefault(name, 0L);
+            // 基线按比例缩放后不再是整数，变化不足半个样本单位视为未变
+            if (Math.abs(currentValue - baseValue) >= 0.5) {
+                deltas.add(new FunctionDelta(name, baseValue, currentValue));
+            }
+        }
+        // 变化量相同时按函数名排序，保证输出稳定
+        deltas.sort((a, b) -> a.delta != b.delta ? Double.compare(b.delta, a.delta) : a.name.compareTo(b.name));
+
+        out.println("\n按 " + kind + " 变化增加最多的函数");
+        printHeader(out);
+        for (int i = 0; i < Math.min(count, deltas.size()) && deltas.get(i).delta > 0; i++) {
+            printDelta(out, deltas.get(i));
+        }
+        out.println("\n按 " + kind + " 变化减少最多的函数");
+        printHeader(out);
+        for (int i = deltas.size() - 1; i >= Math.max(0, deltas.size() - count) && deltas.get(i).delta < 0; i--) {
+            printDelta(out, deltas.get(i));
+        }
+    }
+
+    private void printHeader(PrintStream out) {
+        out.println(String.format("%-10s %-10s %-11s %-9s %s", "base", "current", "delta", "delta%", "name"));
+    }
+
+    private void printDelta(PrintStream out, FunctionDelta delta) {
+        long totalSamples = current.getTotalSamples();
+        double percent = totalSamples > 0 ? 100.0 * delta.delta / totalSamples : 0;
+        out.println(String.format("%9s %10s %10s %+8.2f%% %s",
+            formatter.format(delta.baseValue), formatter.format(delta.currentValue),
+            (delta.delta >= 0 ? "+" : "") + formatter.format(delta.delta), percent, delta.name));
+    }
+
+    private static class FunctionDelta {
+        final String name;
+        final double baseValue;
+        final long currentValue;
+        final double delta;
+
+        FunctionDelta(String name, double baseValue, long currentValue) {
+            this.name = name;
+            this.baseValue = baseValue;
+            this.currentValue = currentValue;
+            this.delta = currentValue - baseValue;
+        }
+    }
+}
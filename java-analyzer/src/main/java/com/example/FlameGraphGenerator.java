@@ -1,105 +1,59 @@
 package com.example;
 
-import com.google.perftools.profiles.ProfileProto.Profile;
-import com.google.perftools.profiles.ProfileProto.Function;
-import com.google.perftools.profiles.ProfileProto.Location;
-import com.google.perftools.profiles.ProfileProto.Sample;
-
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Collections;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
 public class FlameGraphGenerator {
     private static final Logger logger = Logger.getLogger(FlameGraphGenerator.class.getName());
-    private final Profile profile;
-    private final List<String> stringTable;
+    private final AggregatedProfile aggregate;
+    private final ProfileData profile;
     private final String outputPath;
+    // 小于该像素宽度的帧不单独绘制，与 flamegraph.pl 的 --minwidth 相同
+    private double minWidth = DEFAULT_MIN_WIDTH;
 
-    public FlameGraphGenerator(Profile profile, String outputPath) {
-        this.profile = profile;
-        this.stringTable = profile.getStringTableList();
-        this.outputPath = outputPath;
-    }
+    public static final double DEFAULT_MIN_WIDTH = 0.1;
 
-    public void generateFlameGraph() throws IOException {
-        // 生成折叠格式的堆栈信息
-        List<StackInfo> stackInfos = generateStackInfos();
-        
-        // 生成SVG火焰图
-        generateSvg(stackInfos);
+    public FlameGraphGenerator(ProfileData profile, String outputPath) {
+        this(new ProfileAggregator(new SymbolResolver(profile)).aggregate(), outputPath);
     }
 
-    private List<StackInfo> generateStackInfos() {
-        List<StackInfo> stackInfos = new ArrayList<>();
-        List<Sample> samples = profile.getSampleList();
-
-        for (Sample sample : samples) {
-            long count = sample.getValueList().get(0);
-            List<String> callStack = new ArrayList<>();
-
-            // 从叶子节点（调用栈底部）到根节点（调用栈顶部）构建调用栈
-            for (int i = 0; i < sample.getLocationIdCount(); i++) {
-                Location location = profile.getLocation((int)sample.getLocationId(i) - 1);
-                if (location.getLineCount() > 0) {
-                    long functionId = location.getLine(0).getFunctionId();
-                    Function function = profile.getFunction((int)functionId - 1);
-                    String functionName = stringTable.get((int)function.getName());
-                    callStack.add(functionName);
-                }
-            }
-
-            // 构建折叠格式的堆栈字符串
-            StringBuilder stackBuilder = new StringBuilder();
-            for (int i = callStack.size() - 1; i >= 0; i--) {
-                if (i < callStack.size() - 1) {
-                    stackBuilder.append(";");
-                }
-                stackBuilder.append(callStack.get(i));
-            }
-
-            stackInfos.add(new StackInfo(stackBuilder.toString(), count));
-        }
+    public FlameGraphGenerator(AggregatedProfile aggregate, String outputPath) {
+        this.aggregate = aggregate;
+        this.profile = aggregate.getProfile();
+        this.outputPath = outputPath;
+    }
 
-        return stackInfos;
+    public void setMinWidth(double minWidth) {
+        this.minWidth = minWidth;
     }
 
-    private void generateSvg(List<StackInfo> stackInfos) throws IOException {
-        // 合并相同堆栈的样本数
-        Map<String, Long> stackCounts = new HashMap<>();
-        for (StackInfo info : stackInfos) {
-            stackCounts.merge(info.stack, info.count, Long::sum);
-        }
+    public void generateFlameGraph() throws IOException {
+        writeFlameGraph(SvgWriter.open(outputPath));
+    }
 
-        // 计算总样本数和最大堆栈深度
-        long totalSamples = stackCounts.values().stream().mapToLong(Long::longValue).sum();
-        int maxDepth = stackCounts.keySet().stream()
-            .mapToInt(stack -> stack.split(";").length)
-            .max()
-            .orElse(0);
-        
+    // 写入任意输出流（例如 HTTP 响应），写完后关闭该流
+    public void generateFlameGraph(OutputStream outputStream) throws IOException {
+        writeFlameGraph(SvgWriter.open(outputStream));
+    }
 
-        // 将调用栈信息转换为树形结构，方便生成火焰图
-        FlameNode root = new FlameNode("root", 0);
-        for (Map.Entry<String, Long> entry : stackCounts.entrySet()) {
-            String[] frames = entry.getKey().split(";");
-            long count = entry.getValue();
-            
-            // 将每个堆栈添加到树中
-            FlameNode current = root;
-            for (String frame : frames) {
-                current = current.addChild(frame, count);
-            }
-        }
+    private void writeFlameGraph(SvgWriter svg) throws IOException {
+        // 前缀树、最大深度和热点函数都来自共享的单次聚合结果
+        StackTrie trie = aggregate.getTrie();
+        SymbolResolver resolver = aggregate.getResolver();
+        long totalSamples = aggregate.getTotalSamples();
+        int maxDepth = trie.getMaxDepth();
 
         // 生成SVG
-        try (FileWriter writer = new FileWriter(outputPath)) {
+        try (SvgWriter writer = svg) {
             int width = 1200;  // 宽度设为1200px
             int frameHeight = 30;  // 火焰图高度设为30px
             int height = (maxDepth + 1) * frameHeight;
@@ -141,45 +95,47 @@ public class FlameGraphGenerator {
             writer.write(".frame-time { font-size: 8px; font-family: Arial; fill: #FFF; text-shadow: 0px 0px 2px rgba(0,0,0,0.8); }\n");
             writer.write("</style>\n");
 
-            // 计算CPU性能统计信息
-            long period = profile.getPeriod();
-            String unit = stringTable.get((int)profile.getPeriodType().getUnit());
-            double totalTimeNanos = unit.equals("nanoseconds") ? 
-                totalSamples * period : totalSamples * period * 1000;
-            double totalTimeSec = totalTimeNanos / 1_000_000_000.0;  // 转换为秒
-            double samplingRate = totalSamples / totalTimeSec;
+            // 按当前 sample_type 的单位统计；采样数取 samples 列（如果有）
+            ValueFormatter formatter = aggregate.getFormatter();
+            String sampleType = aggregate.getSampleType();
+            StringBuilder summary = new StringBuilder();
+            long sampleCount = countSamples();
+            if (sampleCount >= 0) {
+                summary.append("总采样数: ").append(sampleCount).append(" | ");
+            }
+            summary.append("函数数: ").append(profile.getFunctionCount())
+                .append(" | 总量 (").append(escapeXml(sampleType)).append("): ").append(formatter.format(totalSamples));
+            if (formatter.isTime() && sampleCount > 0 && totalSamples > 0) {
+                double totalTimeSec = totalSamples * ValueFormatter.nanosPerUnit(formatter.getUnit()) / 1_000_000_000.0;
+                summary.append(" | 采样率: ").append(String.format("%.1f", sampleCount / totalTimeSec)).append(" Hz");
+            }
             
             // 添加标题和性能统计信息 - 直接使用拼接避免格式问题
-            writer.write("<text x=\"" + xpad + "\" y=\"24\" class=\"title\">CPU Profile Flame Graph</text>\n");
-            writer.write("<text x=\"" + xpad + "\" y=\"42\" class=\"subtitle\">总采样数: " + totalSamples + 
-                " | 函数数: " + profile.getFunctionCount() + 
-                " | 总CPU时间: " + String.format("%.2f", totalTimeSec) + " s" +
-                " | 采样率: " + String.format("%.1f", samplingRate) + " Hz</text>\n");
+            String title = sampleType.equals("cpu") ? "CPU Profile Flame Graph" : escapeXml(sampleType) + " Flame Graph";
+            writer.write("<text x=\"" + xpad + "\" y=\"24\" class=\"title\">" + title + "</text>\n");
+            writer.write("<text x=\"" + xpad + "\" y=\"42\" class=\"subtitle\">" + summary + "</text>\n");
             writer.write("<text x=\"" + xpad + "\" y=\"58\" class=\"subtitle\">最大堆栈深度: " + maxDepth + 
-                " | 不同堆栈数: " + stackCounts.size() + "</text>\n");
+                " | 不同堆栈数: " + trie.getDistinctStacks() + "</text>\n");
             
-            // 添加热点函数统计
-            Map<String, Long> hotFunctions = new HashMap<>();
-            for (Map.Entry<String, Long> entry : stackCounts.entrySet()) {
-                String[] frames = entry.getKey().split(";");
-                for (String frame : frames) {
-                    hotFunctions.merge(frame, entry.getValue(), Long::sum);
+            // 添加热点函数统计，按聚合时得到的累积值（递归只计一次）排序
+            List<Integer> hotList = new ArrayList<>();
+            for (int frame = 0; frame < resolver.getFrameCount(); frame++) {
+                if (aggregate.getCumulativeValue(frame) > 0) {
+                    hotList.add(frame);
                 }
             }
             
             // 前5个最hot的函数
-            List<Map.Entry<String, Long>> hotList = new ArrayList<>(hotFunctions.entrySet());
-            hotList.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+            hotList.sort((a, b) -> Long.compare(aggregate.getCumulativeValue(b), aggregate.getCumulativeValue(a)));
             StringBuilder hotSpots = new StringBuilder("热点函数: ");
             for (int i = 0; i < Math.min(5, hotList.size()); i++) {
-                Map.Entry<String, Long> hot = hotList.get(i);
+                long hotValue = aggregate.getCumulativeValue(hotList.get(i));
                 if (i > 0) hotSpots.append(" | ");
-                double functionTimeSec = (hot.getValue() * totalTimeSec) / totalSamples;
-                hotSpots.append(escapeXml(hot.getKey()))
+                hotSpots.append(escapeXml(resolver.getFrameName(hotList.get(i))))
                        .append(" (")
-                       .append(String.format("%.2f", functionTimeSec))
-                       .append(" s, ")
-                       .append(String.format("%.1f", 100.0 * hot.getValue() / totalSamples))
+                       .append(formatter.format(hotValue))
+                       .append(", ")
+                       .append(String.format("%.1f", 100.0 * hotValue / totalSamples))
                        .append("%)");
             }
             
@@ -187,92 +143,162 @@ public class FlameGraphGenerator {
 
             // 计算火焰图布局并绘制
             double xscale = (double) width / totalSamples;
-            renderFlameGraph(writer, root, xpad, height + titleHeight - frameHeight, xscale, totalSamples, totalTimeSec);
+            renderFlameGraph(writer, trie, xpad, height + titleHeight - frameHeight, xscale, totalSamples, formatter);
 
             writer.write("</svg>\n");
         }
     }
 
-    // 递归渲染火焰图的每个层级
-    private void renderFlameGraph(FileWriter writer, FlameNode node, double x, double y, 
-                                 double xscale, long totalSamples, double totalTimeSec) throws IOException {
-        
-        if (node.getName().equals("root")) {
-            // 根节点不绘制，直接处理子节点
-            double childX = x;
-            
-            // 对子节点按值从大到小排序，使主要函数出现在中间位置
-            List<FlameNode> sortedChildren = new ArrayList<>(node.getChildren());
-            sortedChildren.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
-            
-            for (FlameNode child : sortedChildren) {
-                double childWidth = child.getValue() * xscale;
-                renderFlameGraph(writer, child, childX, y, xscale, totalSamples, totalTimeSec);
-                childX += childWidth;
+    // samples 列的总和，即合并前的样本条数；profile 没有该列时返回 -1
+    private long countSamples() {
+        for (int i = 0; i < aggregate.getSampleTypeCount(); i++) {
+            if (profile.getSampleTypeName(i).equals("samples")) {
+                return aggregate.getTotal(i);
             }
-            return;
         }
+        return -1;
+    }
 
+    // 仅在显式请求时导出折叠格式的调用栈，供 flamegraph.pl 等外部工具使用
+    public void writeFolded(String foldedPath) throws IOException {
+        // 合并后的帧名含中文（"其他 (N 个帧)"），显式使用 UTF-8，不依赖平台默认编码
+        try (Writer writer = Files.newBufferedWriter(Paths.get(foldedPath), StandardCharsets.UTF_8)) {
+            aggregate.getTrie().writeFolded(writer, aggregate.getResolver());
+        }
+    }
+
+    // 每个帧都要写出的常量片段，预先编码为 UTF-8 字节
+    private static final byte[] FRAME_OPEN = SvgWriter.fragment("<g class=\"frame\">\n<rect x=\"");
+    private static final byte[] RECT_Y = SvgWriter.fragment("\" y=\"");
+    private static final byte[] RECT_WIDTH = SvgWriter.fragment("\" width=\"");
+    private static final byte[] RECT_HEIGHT = SvgWriter.fragment("\" height=\"29.0\" fill=\"url(#grad");
+    private static final byte[] RECT_STYLE = SvgWriter.fragment(")\" stroke=\"rgba(150,50,50,0.3)\" "
+        + "stroke-width=\"0.5\" rx=\"2\" ry=\"2\" >\n<title>");
+    private static final byte[] TITLE_VALUE = SvgWriter.fragment("\n");
+    private static final byte[] TITLE_PERCENT = SvgWriter.fragment(" (");
+    private static final byte[] TITLE_CLOSE = SvgWriter.fragment("%)</title>\n</rect>\n");
+    private static final byte[] TEXT_X = SvgWriter.fragment("<text x=\"");
+    private static final byte[] TEXT_Y = SvgWriter.fragment("\" y=\"");
+    private static final byte[] TEXT_NAME = SvgWriter.fragment("\" class=\"frame-text\">");
+    private static final byte[] TEXT_TIME = SvgWriter.fragment("\" class=\"frame-time\">(");
+    private static final byte[] TEXT_NAME_CLOSE = SvgWriter.fragment("</text>\n");
+    private static final byte[] TEXT_TIME_CLOSE = SvgWriter.fragment(")</text>\n");
+    private static final byte[] FRAME_CLOSE = SvgWriter.fragment("</g>\n");
+
+    // 按先序遍历渲染火焰图，使用显式栈代替递归，避免很深的 Go 调用栈导致 StackOverflowError；
+    // 深度随节点一起入栈，无需沿父指针回溯。
+    // 宽度不足 minWidth 的兄弟节点在遍历时合并为一个"其他"帧（保留合计值），且不再向下展开，
+    // 因此输出的帧数取决于画布宽度，而不是 profile 中不同调用栈的数量
+    private void renderFlameGraph(SvgWriter writer, StackTrie trie, double x, double y,
+                                 double xscale, long totalSamples, ValueFormatter formatter) throws IOException {
         // 框架高度固定为30像素
         double frameHeight = 30.0;
-        
-        // 计算自身宽度和位置
-        double frameWidth = node.getValue() * xscale;
-        
+        SymbolResolver resolver = aggregate.getResolver();
+
+        int capacity = 64;
+        int[] nodeStack = new int[capacity];
+        int[] depthStack = new int[capacity];
+        double[] xStack = new double[capacity];
+        int top = 0;
+        double[] childXs = new double[16];
+
+        // 根节点不绘制，直接从子节点开始
+        nodeStack[top] = StackTrie.ROOT;
+        depthStack[top] = 0;
+        xStack[top] = x;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int node = nodeStack[top];
+            int depth = depthStack[top];
+            double nodeX = xStack[top];
+
+            if (node != StackTrie.ROOT) {
+                writeFrame(writer, resolver.getFrameName(trie.getFrame(node)), trie.getValue(node), depth,
+                    nodeX, y - (depth - 1) * frameHeight, frameHeight, xscale, totalSamples, formatter);
+            }
+
+            // 子节点已按值从大到小排序；先计算各自的起始位置，再逆序入栈以保持先序输出顺序
+            int childCount = trie.getChildCount(node);
+            if (childCount == 0) {
+                continue;
+            }
+            if (childCount > childXs.length) {
+                childXs = new double[Math.max(childCount, childXs.length * 2)];
+            }
+            // 子节点按值降序排列，窄于阈值的节点一定位于末尾
+            double childX = nodeX;
+            int keptCount = 0;
+            long otherValue = 0;
+            int otherCount = 0;
+            for (int i = 0; i < childCount; i++) {
+                long childValue = trie.getValue(trie.getChild(node, i));
+                if (childValue * xscale < minWidth) {
+                    otherValue += childValue;
+                    otherCount++;
+                    continue;
+                }
+                childXs[keptCount++] = childX;
+                childX += childValue * xscale;
+            }
+            if (otherCount > 0 && otherValue * xscale >= minWidth) {
+                // 单个子节点窄于阈值时合计值也窄于阈值，能走到这里的 "其他" 至少包含两个帧
+                String otherName = "其他 (" + otherCount + " 个帧)";
+                writeFrame(writer, otherName, otherValue, depth + 1, childX, y - depth * frameHeight,
+                    frameHeight, xscale, totalSamples, formatter);
+            }
+            childCount = keptCount;
+            if (top + childCount > nodeStack.length) {
+                capacity = Math.max(top + childCount, nodeStack.length * 2);
+                nodeStack = Arrays.copyOf(nodeStack, capacity);
+                depthStack = Arrays.copyOf(depthStack, capacity);
+                xStack = Arrays.copyOf(xStack, capacity);
+            }
+            for (int i = childCount - 1; i >= 0; i--) {
+                nodeStack[top] = trie.getChild(node, i);
+                depthStack[top] = depth + 1;
+                xStack[top] = childXs[i];
+                top++;
+            }
+        }
+    }
+
+    private void writeFrame(SvgWriter writer, String name, long value, int depth, double x, double y,
+                            double frameHeight, double xscale, long totalSamples,
+                            ValueFormatter formatter) throws IOException {
+        // 计算自身宽度
+        double frameWidth = value * xscale;
+
         // 根据深度选择不同的颜色
-        int depth = getNodeDepth(node);
         int colorIndex = depth % 10 + 1;
-        
-        // 使用极简方式生成SVG元素
-        writer.write("<g class=\"frame\">\n");
-        
+
         // 矩形
-        writer.write("<rect ");
-        writer.write("x=\"" + x + "\" ");
-        writer.write("y=\"" + y + "\" ");
-        writer.write("width=\"" + frameWidth + "\" ");
-        writer.write("height=\"" + (frameHeight - 1) + "\" ");
-        writer.write("fill=\"url(#grad" + colorIndex + ")\" ");
-        writer.write("stroke=\"rgba(150,50,50,0.3)\" ");
-        writer.write("stroke-width=\"0.5\" ");
-        writer.write("rx=\"2\" ");
-        writer.write("ry=\"2\" ");
-        writer.write(">\n");
-        
-        // 标题提示
-        double frameDurationSec = (node.getValue() * totalTimeSec) / totalSamples;
-        writer.write("<title>");
-        writer.write(escapeXml(node.getName()) + "\n");
-        writer.write("采样数: " + node.getValue() + " (" + 
-            String.format("%.2f", 100.0 * node.getValue() / totalSamples) + "%)\n");
-        writer.write("耗时: " + String.format("%.2f", frameDurationSec) + " s");
-        writer.write("</title>\n");
-        writer.write("</rect>\n");
+        writer.write(FRAME_OPEN).writeFixed(x, 2)
+            .write(RECT_Y).writeFixed(y, 2)
+            .write(RECT_WIDTH).writeFixed(frameWidth, 2)
+            .write(RECT_HEIGHT).writeLong(colorIndex)
+            .write(RECT_STYLE);
+
+        // 标题提示：按当前 sample_type 的显示单位给出值和占比
+        writer.writeEscaped(name).write(TITLE_VALUE);
+        formatter.writeTo(writer, value);
+        writer.write(TITLE_PERCENT).writeFixed(100.0 * value / totalSamples, 2)
+            .write(TITLE_CLOSE);
 
         // 添加文本标签
         if (frameWidth > 25) {  // 减少最小宽度要求，让更多框架显示文本
-            // 分两行显示：第一行是函数名，第二行是时间
-            writer.write("<text x=\"" + (x + 3) + "\" y=\"" + (y + frameHeight - 14) + 
-                "\" class=\"frame-text\">" + escapeXml(node.getName()) + "</text>\n");
-            writer.write("<text x=\"" + (x + 3) + "\" y=\"" + (y + frameHeight - 3) + 
-                "\" class=\"frame-time\">(" + String.format("%.2f", frameDurationSec) + " s)</text>\n");
-        }
-        writer.write("</g>\n");
-        
-        // 递归绘制子节点
-        if (!node.getChildren().isEmpty()) {
-            double childX = x;
-            
-            // 对子节点按值从大到小排序
-            List<FlameNode> sortedChildren = new ArrayList<>(node.getChildren());
-            sortedChildren.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
-            
-            for (FlameNode child : sortedChildren) {
-                double childWidth = child.getValue() * xscale;
-                renderFlameGraph(writer, child, childX, y - frameHeight, xscale, totalSamples, totalTimeSec);
-                childX += childWidth;
-            }
+            // 分两行显示：第一行是函数名，第二行是值
+            writer.write(TEXT_X).writeFixed(x + 3, 2)
+                .write(TEXT_Y).writeFixed(y + frameHeight - 14, 2)
+                .write(TEXT_NAME).writeEscaped(name).write(TEXT_NAME_CLOSE);
+            writer.write(TEXT_X).writeFixed(x + 3, 2)
+                .write(TEXT_Y).writeFixed(y + frameHeight - 3, 2)
+                .write(TEXT_TIME);
+            formatter.writeTo(writer, value);
+            writer.write(TEXT_TIME_CLOSE);
         }
+        writer.write(FRAME_CLOSE);
     }
 
     // 转义XML特殊字符
@@ -283,61 +309,4 @@ public class FlameGraphGenerator {
                     .replace("\"", "&quot;")
                     .replace("'", "&apos;");
     }
-
-    // 计算节点深度
-    private int getNodeDepth(FlameNode node) {
-        int depth = 0;
-        FlameNode current = node;
-        while (current != null && current.getParent() != null) {
-            depth++;
-            current = current.getParent();
-        }
-        return depth;
-    }
-
-    // 火焰图节点类，用于构建树形结构
-    private static class FlameNode {
-        private final String name;
-        private long value;
-        private final Map<String, FlameNode> children = new HashMap<>();
-        private FlameNode parent;
-        
-        public FlameNode(String name, long value) {
-            this.name = name;
-            this.value = value;
-        }
-        
-        public String getName() {
-            return name;
-        }
-        
-        public long getValue() {
-            return value;
-        }
-        
-        public Collection<FlameNode> getChildren() {
-            return children.values();
-        }
-        
-        public FlameNode getParent() {
-            return parent;
-        }
-        
-        public FlameNode addChild(String name, long increment) {
-            FlameNode child = children.computeIfAbsent(name, k -> new FlameNode(k, 0));
-            child.value += increment;
-            child.parent = this;
-            return child;
-        }
-    }
-
-    private static class StackInfo {
-        final String stack;
-        final long count;
-
-        StackInfo(String stack, long count) {
-            this.stack = stack;
-            this.count = count;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// 与 go tool pprof 的 -focus、-ignore、-hide、-show_from、-prune_from 相同的调用栈变换，正则均为部分匹配：
+//   focus      只保留存在匹配帧的调用栈
+//   ignore     丢弃存在匹配帧的调用栈
+//   hide       从调用栈中删除匹配的帧，样本本身保留
+//   show_from  删除最靠近根的匹配帧之上（调用方一侧）的帧，没有匹配帧的调用栈丢弃
+//   prune_from 删除最靠近叶子的匹配帧之下（被调用方一侧）的帧，匹配帧成为新的叶子
+// 依次按 focus/ignore（原始调用栈）、hide、show_from、prune_from 的顺序应用。
+// 正则只对每个去重后的函数名求值一次，结果按帧下标存入 BitSet，聚合时每一帧只需一次位读取
+public class FrameFilter {
+    private final Pattern focus;
+    private final Pattern ignore;
+    private final Pattern hide;
+    private final Pattern showFrom;
+    private final Pattern pruneFrom;
+
+    private FrameFilter(Pattern focus, Pattern ignore, Pattern hide, Pattern showFrom, Pattern pruneFrom) {
+        this.focus = focus;
+        this.ignore = ignore;
+        this.hide = hide;
+        this.showFrom = showFrom;
+        this.pruneFrom = pruneFrom;
+    }
+
+    // 各参数为 null 时表示不做对应的变换，全部为 null 时返回 null
+    public static FrameFilter parse(String focus, String ignore, String hide, String showFrom, String pruneFrom) {
+        if (focus == null && ignore == null && hide == null && showFrom == null && pruneFrom == null) {
+            return null;
+        }
+        return new FrameFilter(compile(focus), compile(ignore), compile(hide), compile(showFrom), compile(pruneFrom));
+    }
+
+    private static Pattern compile(String regex) {
+        return regex != null ? Pattern.compile(regex) : null;
+    }
+
+    // 对一个 profile 的帧名称表求值；结果只读，可在聚合的工作线程间共享
+    public Matcher bind(SymbolResolver resolver) {
+        return new Matcher(resolver, this);
+    }
+
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        append(parts, "focus", focus);
+        append(parts, "ignore", ignore);
+        append(parts, "hide", hide);
+        append(parts, "show_from", showFrom);
+        append(parts, "prune_from", pruneFrom);
+        return String.join(" ", parts);
+    }
+
+    private static void append(List<String> parts, String name, Pattern pattern) {
+        if (pattern != null) {
+            parts.add(name + "=" + pattern.pattern());
+        }
+    }
+
+    public static class Matcher {
+        private final BitSet focus;
+        private final BitSet ignore;
+        private final BitSet hide;
+        private final BitSet showFrom;
+        private final BitSet pruneFrom;
+
+        Matcher(SymbolResolver resolver, FrameFilter filter) {
+            focus = evaluate(resolver, filter.focus);
+            ignore = evaluate(resolver, filter.ignore);
+            hide = evaluate(resolver, filter.hide);
+            showFrom = evaluate(resolver, filter.showFrom);
+            pruneFrom = evaluate(resolver, filter.pruneFrom);
+        }
+
+        private static BitSet evaluate(SymbolResolver resolver, Pattern pattern) {
+            if (pattern == null) {
+                return null;
+            }
+            BitSet matches = new BitSet(resolver.getFrameCount());
+            for (int frame = 0; frame < resolver.getFrameCount(); frame++) {
+                if (pattern.matcher(resolver.getFrameName(frame)).find()) {
+                    matches.set(frame);
+                }
+            }
+            return matches;
+        }
+
+        // 就地变换按从叶子到根排列的帧序列，返回 false 表示整个调用栈被丢弃
+        public boolean apply(IntArrayList frames) {
+            if (focus != null && indexOf(frames, focus) < 0) {
+                return false;
+            }
+            if (ignore != null && indexOf(frames, ignore) >= 0) {
+                return false;
+            }
+            if (hide != null) {
+                int kept = 0;
+                for (int i = 0; i < frames.size(); i++) {
+                    int frame = frames.get(i);
+                    if (!hide.get(frame)) {
+                        frames.set(kept++, frame);
+                    }
+                }
+                frames.truncate(kept);
+            }
+            if (showFrom != null) {
+                int root = -1;
+                for (int i = frames.size() - 1; i >= 0 && root < 0; i--) {
+                    if (showFrom.get(frames.get(i))) {
+                        root = i;
+                    }
+                }
+                if (root < 0) {
+                    return false;
+                }
+                frames.truncate(root + 1);
+            }
+            if (pruneFrom != null) {
+                int leaf = indexOf(frames, pruneFrom);
+                if (leaf > 0) {
+                    for (int i = leaf; i < frames.size(); i++) {
+                        frames.set(i - leaf, frames.get(i));
+                    }
+                    frames.truncate(frames.size() - leaf);
+                }
+            }
+            return true;
+        }
+
+        // 从叶子开始第一个匹配帧的位置
+        private static int indexOf(IntArrayList frames, BitSet matches) {
+            for (int i = 0; i < frames.size(); i++) {
+                if (matches.get(frames.get(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
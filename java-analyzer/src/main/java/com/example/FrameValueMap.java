@@ -0,0 +1,99 @@
+package com.example;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// 以帧下标为索引的 long[] 计数表的只读 Map 视图，键为函数名
+// 聚合时只累加基本类型数组，不装箱也不计算字符串哈希；按名称查询时经 SymbolResolver 找到帧下标，
+// 遍历顺序为帧下标顺序，与聚合使用的线程数无关
+public class FrameValueMap extends AbstractMap<String, Long> {
+    private final SymbolResolver resolver;
+    private final long[] values;
+    private final boolean[] present;
+    private final int size;
+
+    // present[frame] 为 true 的帧才出现在视图中（值可以为 0）
+    public FrameValueMap(SymbolResolver resolver, long[] values, boolean[] present) {
+        this.resolver = resolver;
+        this.values = values;
+        this.present = present;
+        int count = 0;
+        for (boolean p : present) {
+            if (p) {
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    // 按帧下标读取，不存在的帧返回 0
+    public long getValue(int frame) {
+        return frame >= 0 && frame < values.length ? values[frame] : 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Long get(Object key) {
+        int frame = indexOf(key);
+        return frame >= 0 ? values[frame] : null;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int frame = resolver.getFrameIndex((String) key);
+        return frame >= 0 && frame < present.length && present[frame] ? frame : -1;
+    }
+
+    @Override
+    public Set<Entry<String, Long>> entrySet() {
+        return new AbstractSet<Entry<String, Long>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<String, Long>> iterator() {
+                return new Iterator<Entry<String, Long>>() {
+                    private int next = advance(0);
+
+                    private int advance(int frame) {
+                        while (frame < present.length && !present[frame]) {
+                            frame++;
+                        }
+                        return frame;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < present.length;
+                    }
+
+                    @Override
+                    public Entry<String, Long> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int frame = next;
+                        next = advance(frame + 1);
+                        return new SimpleImmutableEntry<>(resolver.getFrameName(frame), values[frame]);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,369 @@
+package com.example;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// 两级流水线的 gzip 解压输入流
+// 解压线程把数据写入池化的 direct buffer，经由有界环形队列交给读取方（解码线程），两者并行运行。
+// 多个 gzip member 拼接而成的文件（例如按分片分别压缩后拼接的 profile）中的各个 member 由多个线程同时解压，
+// 读取方按顺序消费。偏移 0 的 member 在构造时立即开始解压，其余 member 的起点由后台任务边解压边扫描 gzip 头部猜测，
+// 猜测可能落在压缩数据内部，因此只采用与前一个 member 结尾首尾相接的那些，其余的解压结果直接丢弃。
+// 解压和扫描任务都在进程内共用的线程池中运行，线程数为 CPU 核数，同时打开多个流时线程总数也不会增加；
+// 每个流同时解压的 member 数（以及占用的 direct buffer）由构造参数 threads 限制
+public class GzipPipelineInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 1 << 20;
+    // 每个 member 最多积压的已解压缓冲区数
+    private static final int RING_SIZE = 4;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FLAG_HCRC = 2;
+    private static final int FLAG_EXTRA = 4;
+    private static final int FLAG_NAME = 8;
+    private static final int FLAG_COMMENT = 16;
+    private static final ByteBuffer END_OF_MEMBER = ByteBuffer.allocate(0);
+    // 扫描任务每处理这么多字节检查一次是否已关闭
+    private static final int SCAN_CHUNK = 1 << 20;
+    private static final long SCAN_END = -1;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    // 按提交顺序执行：每个流的当前 member 总是先于它之后的 member 开始解压，阻塞等待读取方的任务不会饿死其他流
+    private static final ExecutorService INFLATERS = Executors.newFixedThreadPool(POOL_SIZE, runnable -> {
+        Thread thread = new Thread(runnable, "gzip-inflater");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ByteBuffer compressed;
+    private final int lookahead;
+    private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    // 已提交解压、按起点排序的 member
+    private final ArrayDeque<Member> pending = new ArrayDeque<>();
+    // 扫描任务找到的候选起点，按偏移递增，以 SCAN_END 结束
+    private final BlockingQueue<Long> candidates = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+    private boolean scanDone;
+
+    private Member current;
+    private ByteBuffer buffer;
+    private long expectedStart;
+    private boolean finished;
+
+    // compressed 为整个 gzip 文件的内容，通常是内存映射的 MappedByteBuffer；threads 超过共享线程池的大小时按池大小计
+    public GzipPipelineInputStream(ByteBuffer compressed, int threads) {
+        this.compressed = compressed;
+        int workers = Math.max(1, Math.min(threads, POOL_SIZE));
+        this.lookahead = workers * 2;
+        submit(0);
+        INFLATERS.execute(this::scanCandidates);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        closed = true;
+        for (Member member : pending) {
+            member.cancel();
+        }
+        if (current != null) {
+            current.cancel();
+        }
+        // 共享线程池不关闭：已开始的任务检查到取消后退出，尚未开始的任务开始后立即结束
+    }
+
+    private boolean ensureData() throws IOException {
+        while (buffer == null || !buffer.hasRemaining()) {
+            if (buffer != null) {
+                pool.offer(buffer);
+                buffer = null;
+            }
+            if (finished) {
+                return false;
+            }
+            if (current == null && !nextMember()) {
+                finished = true;
+                return false;
+            }
+            ByteBuffer next = current.take();
+            if (next == END_OF_MEMBER) {
+                current.checkError();
+                expectedStart = current.end;
+                current = null;
+                continue;
+            }
+            buffer = next;
+        }
+        return true;
+    }
+
+    // 找到起点与上一个 member 结尾相接的下一个 member，跳过误判的候选起点
+    private boolean nextMember() throws IOException {
+        while (true) {
+            submitAhead();
+            Member member = pending.poll();
+            if (member == null) {
+                if (!scanDone) {
+                    // 已提交的候选都已用完，等待扫描任务找到下一个
+                    accept(takeCandidate());
+                    continue;
+                }
+                // 末尾剩余的字节不构成 gzip member（例如补齐用的 0），与 GZIPInputStream 一样忽略
+                return false;
+            }
+            if (member.start == expectedStart) {
+                current = member;
+                submitAhead();
+                return true;
+            }
+            member.cancel();
+            if (member.start > expectedStart) {
+                // 上一个 member 之后的字节不以 gzip 头部开始，与 GZIPInputStream 一样视为结束
+                for (Member rest : pending) {
+                    rest.cancel();
+                }
+                pending.clear();
+                return false;
+            }
+        }
+    }
+
+    // 只取扫描任务已经找到的候选，不等待
+    private void submitAhead() {
+        while (pending.size() < lookahead && !scanDone) {
+            Long candidate = candidates.poll();
+            if (candidate == null) {
+                return;
+            }
+            accept(candidate);
+        }
+    }
+
+    private void accept(long candidate) {
+        if (candidate == SCAN_END) {
+            scanDone = true;
+        } else {
+            submit(candidate);
+        }
+    }
+
+    private void submit(long start) {
+        Member member = new Member(start);
+        pending.add(member);
+        INFLATERS.execute(member::inflate);
+    }
+
+    private long takeCandidate() throws IOException {
+        try {
+            return candidates.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("读取 gzip 数据时被中断", e);
+        }
+    }
+
+    // 在共享线程池中扫描偏移 0 之后的 gzip 头部，与解压同时进行
+    private void scanCandidates() {
+        int limit = compressed.limit() - 10;
+        for (int chunk = 1; chunk <= limit && !closed; chunk += SCAN_CHUNK) {
+            int chunkEnd = (int) Math.min(limit, (long) chunk + SCAN_CHUNK - 1);
+            for (int i = chunk; i <= chunkEnd; i++) {
+                if (isMemberHeader(compressed, i)) {
+                    candidates.add((long) i);
+                }
+            }
+        }
+        candidates.add(SCAN_END);
+    }
+
+    // gzip 头部特征：1f 8b 08、保留标志位为 0、XFL 为 0/2/4、OS 为已定义的取值，用于减少压缩数据中的误判
+    static boolean isMemberHeader(ByteBuffer data, int i) {
+        if (data.get(i) != (byte) 0x1F || data.get(i + 1) != (byte) 0x8B
+                || data.get(i + 2) != 8 || (data.get(i + 3) & 0xE0) != 0) {
+            return false;
+        }
+        int extraFlags = data.get(i + 8) & 0xFF;
+        int os = data.get(i + 9) & 0xFF;
+        return (extraFlags == 0 || extraFlags == 2 || extraFlags == 4) && (os <= 13 || os == 255);
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer pooled = pool.poll();
+        if (pooled == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooled.clear();
+        return pooled;
+    }
+
+    // 一个（候选）gzip member 的解压任务及其输出队列
+    private class Member {
+        final long start;
+        final BlockingQueue<ByteBuffer> output = new ArrayBlockingQueue<>(RING_SIZE + 1);
+        volatile long end = -1;
+        volatile IOException error;
+        volatile boolean cancelled;
+
+        Member(long start) {
+            this.start = start;
+        }
+
+        void inflate() {
+            Inflater inflater = new Inflater(true);
+            try {
+                ByteBuffer input = compressed.duplicate();
+                input.position((int) skipHeader(input, (int) start));
+                inflater.setInput(input);
+                CRC32 crc = new CRC32();
+                long size = 0;
+                while (!inflater.finished() && !cancelled) {
+                    ByteBuffer out = acquireBuffer();
+                    while (out.hasRemaining() && !inflater.finished()) {
+                        if (inflater.inflate(out) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new EOFException("gzip 数据不完整");
+                        }
+                    }
+                    out.flip();
+                    crc.update(out.duplicate());
+                    size += out.remaining();
+                    if (!put(out)) {
+                        return;
+                    }
+                }
+                if (cancelled) {
+                    return;
+                }
+                // 尾部为小端序的 CRC32 和原始长度（模 2^32）
+                int trailer = input.position();
+                if (trailer + GZIP_TRAILER_SIZE > input.limit()) {
+                    throw new EOFException("gzip 尾部不完整");
+                }
+                if (readIntLE(input, trailer) != (int) crc.getValue() || readIntLE(input, trailer + 4) != (int) size) {
+                    throw new IOException("gzip 校验失败");
+                }
+                end = trailer + GZIP_TRAILER_SIZE;
+            } catch (IOException e) {
+                error = e;
+            } catch (DataFormatException | RuntimeException e) {
+                error = new IOException("gzip 数据损坏: " + e.getMessage(), e);
+            } finally {
+                inflater.end();
+                put(END_OF_MEMBER);
+            }
+        }
+
+        // 队列满时阻塞等待读取方消费，被取消后放弃
+        private boolean put(ByteBuffer out) {
+            try {
+                while (!cancelled) {
+                    if (output.offer(out, 50, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        ByteBuffer take() throws IOException {
+            try {
+                return output.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("读取 gzip 数据时被中断", e);
+            }
+        }
+
+        void checkError() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            ByteBuffer drained;
+            while ((drained = output.poll()) != null) {
+                if (drained != END_OF_MEMBER) {
+                    pool.offer(drained);
+                }
+            }
+        }
+    }
+
+    // 跳过 gzip 头部，返回压缩数据的起始偏移
+    private static long skipHeader(ByteBuffer data, int offset) throws IOException {
+        int limit = data.limit();
+        if (offset + 10 > limit) {
+            throw new EOFException("gzip 头部不完整");
+        }
+        int flags = data.get(offset + 3) & 0xFF;
+        int position = offset + 10;
+        if ((flags & FLAG_EXTRA) != 0) {
+            if (position + 2 > limit) {
+                throw new EOFException("gzip 头部不完整");
+            }
+            position += 2 + ((data.get(position) & 0xFF) | (data.get(position + 1) & 0xFF) << 8);
+        }
+        if ((flags & FLAG_NAME) != 0) {
+            position = skipZeroTerminated(data, position);
+        }
+        if ((flags & FLAG_COMMENT) != 0) {
+            position = skipZeroTerminated(data, position);
+        }
+        if ((flags & FLAG_HCRC) != 0) {
+            position += 2;
+        }
+        if (position > limit) {
+            throw new EOFException("gzip 头部不完整");
+        }
+        return position;
+    }
+
+    private static int skipZeroTerminated(ByteBuffer data, int position) throws IOException {
+        int limit = data.limit();
+        while (position < limit && data.get(position) != 0) {
+            position++;
+        }
+        if (position >= limit) {
+            throw new EOFException("gzip 头部不完整");
+        }
+        return position + 1;
+    }
+
+    private static int readIntLE(ByteBuffer data, int offset) {
+        return (data.get(offset) & 0xFF) | (data.get(offset + 1) & 0xFF) << 8
+            | (data.get(offset + 2) & 0xFF) << 16 | (data.get(offset + 3) & 0xFF) << 24;
+    }
+}
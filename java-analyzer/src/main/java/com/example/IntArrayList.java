@@ -0,0 +1,49 @@
+package com.example;
+
+import java.util.Arrays;
+
+// 基本类型 int 的可增长数组，可重复 clear 复用
+public class IntArrayList {
+    private int[] data;
+    private int size;
+
+    public IntArrayList() {
+        this(16);
+    }
+
+    public IntArrayList(int capacity) {
+        this.data = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // 只保留前 size 个元素
+    public void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
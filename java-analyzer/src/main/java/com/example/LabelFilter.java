@@ -0,0 +1,205 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// 按样本标签（pprof 的 tag）筛选调用栈，多个条件之间为"与"关系
+// 支持的写法：
+//   key=value    存在字符串值等于 value 的标签；value 为整数时也匹配相等的数值标签
+//   key!=value   不存在字符串值等于 value 的标签（没有该 key 的样本保留）
+//   key~regex    存在字符串值匹配正则的标签（部分匹配）
+//   key=lo:hi    存在数值在 [lo, hi] 内的标签，任一端可省略，例如 bytes=1024:
+// 条件中的字符串在绑定 profile 时一次性换成字符串表下标，正则结果按字符串下标缓存，
+// 筛选时只比较 long，不为每个调用栈创建对象
+public class LabelFilter {
+    private static final int EXACT = 0;
+    private static final int EXCLUDE = 1;
+    private static final int REGEX = 2;
+    private static final int RANGE = 3;
+
+    private final List<Condition> conditions;
+
+    private LabelFilter(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    // 解析命令行中的条件，空列表返回 null 表示不筛选
+    public static LabelFilter parse(List<String> expressions) {
+        if (expressions == null || expressions.isEmpty()) {
+            return null;
+        }
+        List<Condition> conditions = new ArrayList<>();
+        for (String expression : expressions) {
+            conditions.add(Condition.parse(expression));
+        }
+        return new LabelFilter(conditions);
+    }
+
+    // 把条件绑定到具体 profile 的字符串表；LabelFilter 本身不保存 profile 相关的状态，可在多个 profile 间共用
+    public Matcher bind(ProfileData profile) {
+        return new Matcher(profile, conditions);
+    }
+
+    @Override
+    public String toString() {
+        List<String> expressions = new ArrayList<>();
+        for (Condition condition : conditions) {
+            expressions.add(condition.expression);
+        }
+        return String.join(" ", expressions);
+    }
+
+    // 绑定到一个 profile 的筛选器；正则缓存不是线程安全的，应在单个线程中使用
+    public static class Matcher {
+        private final ProfileData profile;
+        private final StackTable stacks;
+        private final Condition[] conditions;
+        private final long[] keys;
+        private final long[] values;
+        // 正则条件对每个字符串下标的结果：0 未计算，1 匹配，2 不匹配
+        private final byte[][] regexResults;
+
+        Matcher(ProfileData profile, List<Condition> conditions) {
+            this.profile = profile;
+            this.stacks = profile.getStacks();
+            this.conditions = conditions.toArray(new Condition[0]);
+            this.keys = new long[this.conditions.length];
+            this.values = new long[this.conditions.length];
+            this.regexResults = new byte[this.conditions.length][];
+            for (int c = 0; c < this.conditions.length; c++) {
+                Condition condition = this.conditions[c];
+                keys[c] = indexOf(condition.key);
+                values[c] = condition.value != null ? indexOf(condition.value) : -1;
+                if (condition.type == REGEX) {
+                    regexResults[c] = new byte[profile.getStringCount()];
+                }
+            }
+        }
+
+        // 字符串表中的下标，不存在时为 -1，不会与任何标签相等；下标 0 是空串，不作为 key 或值
+        private long indexOf(String string) {
+            for (int i = 1; i < profile.getStringCount(); i++) {
+                if (profile.getString(i).equals(string)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public boolean matches(int stack) {
+            for (int c = 0; c < conditions.length; c++) {
+                if (!matches(c, stack)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matches(int c, int stack) {
+            Condition condition = conditions[c];
+            int labelCount = stacks.getLabelCount(stack);
+            for (int i = 0; i < labelCount; i++) {
+                if (stacks.getLabelKey(stack, i) != keys[c]) {
+                    continue;
+                }
+                long str = stacks.getLabelStr(stack, i);
+                switch (condition.type) {
+                    case EXACT:
+                        if ((str != 0 && str == values[c])
+                            || (str == 0 && condition.hasNumber && stacks.getLabelNum(stack, i) == condition.low)) {
+                            return true;
+                        }
+                        break;
+                    case EXCLUDE:
+                        if (str != 0 && str == values[c]) {
+                            return false;
+                        }
+                        break;
+                    case REGEX:
+                        if (str != 0 && matchesRegex(c, str)) {
+                            return true;
+                        }
+                        break;
+                    default:
+                        long num = stacks.getLabelNum(stack, i);
+                        if (str == 0 && num >= condition.low && num <= condition.high) {
+                            return true;
+                        }
+                        break;
+                }
+            }
+            return condition.type == EXCLUDE;
+        }
+
+        private boolean matchesRegex(int c, long str) {
+            byte[] results = regexResults[c];
+            if (str < 0 || str >= results.length) {
+                return false;
+            }
+            int index = (int) str;
+            if (results[index] == 0) {
+                results[index] = conditions[c].pattern.matcher(profile.getString(index)).find() ? (byte) 1 : (byte) 2;
+            }
+            return results[index] == 1;
+        }
+    }
+
+    private static class Condition {
+        final String expression;
+        final int type;
+        final String key;
+        final String value;
+        final Pattern pattern;
+        final boolean hasNumber;
+        final long low;
+        final long high;
+
+        private Condition(String expression, int type, String key, String value, Pattern pattern,
+                          boolean hasNumber, long low, long high) {
+            this.expression = expression;
+            this.type = type;
+            this.key = key;
+            this.value = value;
+            this.pattern = pattern;
+            this.hasNumber = hasNumber;
+            this.low = low;
+            this.high = high;
+        }
+
+        static Condition parse(String expression) {
+            int exclude = expression.indexOf("!=");
+            int regex = expression.indexOf('~');
+            int equals = expression.indexOf('=');
+            if (exclude > 0 && exclude + 1 == equals) {
+                String value = expression.substring(exclude + 2);
+                return new Condition(expression, EXCLUDE, expression.substring(0, exclude), value, null, false, 0, 0);
+            }
+            if (regex > 0 && (equals < 0 || regex < equals)) {
+                String value = expression.substring(regex + 1);
+                return new Condition(expression, REGEX, expression.substring(0, regex), null, Pattern.compile(value),
+                    false, 0, 0);
+            }
+            if (equals <= 0) {
+                throw new IllegalArgumentException("无法解析的标签条件: " + expression + "（格式为 key=value、key!=value、key~regex 或 key=lo:hi）");
+            }
+            String key = expression.substring(0, equals);
+            String value = expression.substring(equals + 1);
+            int colon = value.indexOf(':');
+            if (colon >= 0 && isNumberOrEmpty(value.substring(0, colon)) && isNumberOrEmpty(value.substring(colon + 1))) {
+                String low = value.substring(0, colon);
+                String high = value.substring(colon + 1);
+                return new Condition(expression, RANGE, key, null, null, true,
+                    low.isEmpty() ? Long.MIN_VALUE : Long.parseLong(low),
+                    high.isEmpty() ? Long.MAX_VALUE : Long.parseLong(high));
+            }
+            boolean number = !value.isEmpty() && isNumberOrEmpty(value);
+            long parsed = number ? Long.parseLong(value) : 0;
+            return new Condition(expression, EXACT, key, value, null, number, parsed, parsed);
+        }
+
+        private static boolean isNumberOrEmpty(String value) {
+            return value.matches("-?\\d{0,18}") && !value.equals("-");
+        }
+    }
+}
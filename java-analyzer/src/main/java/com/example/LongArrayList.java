@@ -0,0 +1,40 @@
+package com.example;
+
+import java.util.Arrays;
+
+// 基本类型 long 的可增长数组，避免 List<Long> 的装箱开销
+public class LongArrayList {
+    private long[] data;
+    private int size;
+
+    public LongArrayList() {
+        this(16);
+    }
+
+    public LongArrayList(int capacity) {
+        this.data = new long[Math.max(capacity, 1)];
+    }
+
+    public void add(long value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    public long get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, long value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
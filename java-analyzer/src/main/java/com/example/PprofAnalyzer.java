@@ -1,17 +1,14 @@
 package com.example;
 
-import com.google.perftools.profiles.ProfileProto.Profile;
-import com.google.perftools.profiles.ProfileProto.Function;
-import com.google.perftools.profiles.ProfileProto.Location;
-import com.google.perftools.profiles.ProfileProto.Sample;
-
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 import java.util.logging.Level;
@@ -21,89 +18,105 @@ public class PprofAnalyzer {
     private static final Logger logger = Logger.getLogger(PprofAnalyzer.class.getName());
 
     public static void main(String[] args) {
-        String profilePath = "../profiling-data/cpu.prof";
+        AnalyzerOptions options;
+        try {
+            options = AnalyzerOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            logger.severe(e.getMessage());
+            return;
+        }
 
-        try (InputStream fileInputStream = new FileInputStream(profilePath);
-             InputStream gzipInputStream = new GZIPInputStream(fileInputStream)) {
+        // 批量模式：并发分析目录或通配符匹配到的所有 profile
+        if (options.getBatchInput() != null) {
+            try {
+                new BatchAnalyzer(options).run();
+            } catch (Exception e) {
+                logger.severe("批量分析时出错: " + e.getMessage());
+            }
+            return;
+        }
 
-            // 解析 profiling 文件
-            Profile profile = Profile.parseFrom(gzipInputStream);
-            
-            // 获取字符串表
-            List<String> stringTable = profile.getStringTableList();
+        // 服务模式：启动 HTTP 服务后由服务线程处理请求，进程退出时关闭服务
+        if (options.getServePort() >= 0) {
+            try {
+                ProfileServer server = new ProfileServer(options,
+                    options.getStoreDir() != null ? openStore(options) : null);
+                server.start(options.getServePort());
+                Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            } catch (Exception e) {
+                logger.severe("启动 HTTP 服务时出错: " + e.getMessage());
+            }
+            return;
+        }
+
+        String profilePath = options.getProfilePath();
+
+        try {
+            // 时序存储模式：--ingest 时写入后退出，否则按时间范围查询出合并后的 profile，再做同样的分析
+            ProfileData profile;
+            if (options.getStoreDir() != null) {
+                ProfileStore store = openStore(options);
+                if (options.getIngestInput() != null) {
+                    ingestProfiles(store, options);
+                    return;
+                }
+                profile = queryStore(store, options);
+            } else {
+                // 流式解析 profiling 文件，相同调用栈的样本在解码时合并；
+                // 合并模式下先把所有输入合并为一个 profile 并写出，再对合并结果做同样的分析
+                profile = options.getMergeInput() != null ? mergeProfiles(options) : readProfile(profilePath, options);
+            }
+
+            // 按标签分组：每组单独聚合，输出各自的火焰图和 top-N
+            if (options.getGroupBy() != null) {
+                analyzeGroups(profile, options);
+                return;
+            }
+
+            // 单次遍历样本完成聚合（所有 value 列一起累加），火焰图、调用图和 top-N 报表共用同一结果
+            AggregatedProfile aggregate = selectSampleType(aggregate(profile, options), options.getSampleIndex());
+
+            // 源码标注模式：聚合时已累加所列函数的逐行 flat/cum，只输出标注后的源码
+            if (options.getListRegex() != null) {
+                aggregate.getSourceListing().print(aggregate, System.out);
+                return;
+            }
+
+            // 差分模式：基线同样只聚合一次，按与当前 profile 相同的 sample_type 和筛选条件比较，输出差分火焰图和变化最大的函数
+            if (options.getDiffBasePath() != null) {
+                String sampleType = aggregate.getSampleType().isEmpty()
+                    ? String.valueOf(aggregate.getSampleIndex()) : aggregate.getSampleType();
+                AggregatedProfile baseAggregate =
+                    selectSampleType(aggregate(readProfile(options.getDiffBasePath(), options), options), sampleType);
+                DiffFlameGraphGenerator diffGenerator = new DiffFlameGraphGenerator(baseAggregate, aggregate,
+                    options.getDiffFlameGraphPath(), options.getDiffNormalization());
+                diffGenerator.setMinWidth(options.getMinWidth());
+                diffGenerator.generateFlameGraph();
+                logger.info("差分火焰图已生成到: " + options.getDiffFlameGraphPath());
+                diffGenerator.printReport(System.out, 10);
+                return;
+            }
 
             // 生成火焰图
-            String flameGraphPath = "../profiling-data/flamegraph.svg";
-            FlameGraphGenerator flameGraphGenerator = new FlameGraphGenerator(profile, flameGraphPath);
+            String flameGraphPath = options.getFlameGraphPath();
+            FlameGraphGenerator flameGraphGenerator = new FlameGraphGenerator(aggregate, flameGraphPath);
+            flameGraphGenerator.setMinWidth(options.getMinWidth());
             flameGraphGenerator.generateFlameGraph();
             logger.info("火焰图已生成到: " + flameGraphPath);
 
+            // 仅在显式请求时导出折叠格式的调用栈
+            if (options.getFoldedPath() != null) {
+                flameGraphGenerator.writeFolded(options.getFoldedPath());
+                logger.info("折叠调用栈已导出到: " + options.getFoldedPath());
+            }
+
             // 生成调用图
-            String callGraphPath = "../profiling-data/callgraph.svg";
-            CallGraphGenerator callGraphGenerator = new CallGraphGenerator(profile, callGraphPath);
+            String callGraphPath = options.getCallGraphPath();
+            CallGraphGenerator callGraphGenerator = new CallGraphGenerator(aggregate, callGraphPath);
             callGraphGenerator.generateCallGraph();
             logger.info("调用图已生成到: " + callGraphPath);
-            
-            // 从CallGraphGenerator获取性能数据
-            Map<String, Long> functionSelfTime = callGraphGenerator.getFunctionSelfTime(); 
-            Map<String, Long> functionCumTime = callGraphGenerator.getFunctionCumTime();
-            
-            // 计算时间信息
-            long period = profile.getPeriod();
-            String unit = stringTable.get((int)profile.getPeriodType().getUnit());
-            
-            // 获取函数对象映射
-            Map<String, Function> functionMap = new HashMap<>();
-            for (int i = 0; i < profile.getFunctionCount(); i++) {
-                Function function = profile.getFunction(i);
-                String functionName = stringTable.get((int)function.getName());
-                functionMap.put(functionName, function);
-            }
-            
-            // 将函数转换为列表并按累积时间排序
-            List<Map.Entry<String, Long>> sortedFunctions = new ArrayList<>(functionCumTime.entrySet());
-            Collections.sort(sortedFunctions, (a, b) -> Long.compare(b.getValue(), a.getValue()));
-            
-            // 计算总时间
-            long totalSamples = sortedFunctions.stream()
-                .mapToLong(Map.Entry::getValue)
-                .sum();
-            double totalTimeNanos = unit.equals("nanoseconds") ? 
-                totalSamples * period : totalSamples * period * 1000;
-            double totalTimeSec = totalTimeNanos / 1_000_000_000.0;  // 转换为秒
-            
-            System.out.println(String.format("\nShowing nodes accounting for %.2fs, %.2f%% of %.2fs total", 
-                totalTimeSec, 100.0, totalTimeSec));
-            System.out.println("Showing top 10 nodes");
-            System.out.println(String.format("%-10s %-8s %-8s %-10s %-8s %s", 
-                "flat", "flat%", "sum%", "cum", "cum%", "name"));
-            
-            double sumPercent = 0;
-            for (int i = 0; i < Math.min(10, sortedFunctions.size()); i++) {
-                Map.Entry<String, Long> entry = sortedFunctions.get(i);
-                String functionName = entry.getKey();
-                long cumSamples = entry.getValue();
-                
-                // 从函数调用图获取自身时间
-                long selfSamples = functionSelfTime.getOrDefault(functionName, 0L);
-                
-                // 计算时间和百分比
-                double cumTimeNanos = unit.equals("nanoseconds") ? 
-                    cumSamples * period : cumSamples * period * 1000;
-                double cumTime = cumTimeNanos / 1_000_000_000.0;
-                
-                double selfTimeNanos = unit.equals("nanoseconds") ? 
-                    selfSamples * period : selfSamples * period * 1000;
-                double selfTime = selfTimeNanos / 1_000_000_000.0;
-                
-                double cumPercent = 100.0 * cumSamples / totalSamples;
-                double selfPercent = 100.0 * selfSamples / totalSamples;
-                
-                sumPercent += selfPercent;
-                
-                System.out.println(String.format("%8.2fs %7.2f%% %7.2f%% %8.2fs %7.2f%% %s", 
-                    selfTime, selfPercent, sumPercent, cumTime, cumPercent, functionName));
-            }
+
+            printTopReports(aggregate, options.getSampleIndex(), System.out, 10);
         } catch (Exception e) {
             logger.severe("解析 profiling 文件时出错: " + e.getMessage());
             java.io.StringWriter sw = new java.io.StringWriter();
@@ -111,4 +124,194 @@ public class PprofAnalyzer {
             logger.severe(sw.toString());
         }
     }
+
+    // 读取 pprof 文件，gzip 压缩或未压缩均可
+    public static ProfileData readProfile(String profilePath) throws IOException {
+        return ProfileReader.read(Paths.get(profilePath));
+    }
+
+    // 按选项读取 pprof 文件：指定了缓存目录时先查列式缓存，未命中再解析并写入缓存
+    public static ProfileData readProfile(String profilePath, AnalyzerOptions options) throws IOException {
+        return readProfile(profilePath, options, Runtime.getRuntime().availableProcessors());
+    }
+
+    // readThreads 为解压可用的线程数，同时读取多个 profile 的调用方按 ProfileReader.threadsPerRead 分配
+    public static ProfileData readProfile(String profilePath, AnalyzerOptions options, int readThreads)
+            throws IOException {
+        if (options.getCacheDir() == null) {
+            return ProfileReader.read(Paths.get(profilePath), readThreads);
+        }
+        ProfileCache cache = new ProfileCache(Paths.get(options.getCacheDir()), options.getCacheMaxBytes());
+        cache.setReadThreads(readThreads);
+        return cache.read(Paths.get(profilePath));
+    }
+
+    static ProfileStore openStore(AnalyzerOptions options) throws IOException {
+        ProfileStore store = new ProfileStore(Paths.get(options.getStoreDir()));
+        for (Map.Entry<ProfileStore.Resolution, Long> entry : options.getRetention().entrySet()) {
+            store.setRetention(entry.getKey(), entry.getValue());
+        }
+        return store;
+    }
+
+    private static void ingestProfiles(ProfileStore store, AnalyzerOptions options) throws IOException {
+        List<Path> inputs = BatchAnalyzer.findProfiles(options.getIngestInput());
+        for (Path input : inputs) {
+            store.ingest(readProfile(input.toString(), options));
+        }
+        logger.info("已写入 " + inputs.size() + " 个 profile 到: " + options.getStoreDir());
+    }
+
+    // 查询范围：--from/--to 为绝对时间，--last 为以 --to（默认为最新数据）为终点的时长；都未指定时查询最近一小时
+    private static ProfileData queryStore(ProfileStore store, AnalyzerOptions options) throws IOException {
+        return queryStore(store, options.getFrom(), options.getTo(), options.getLastNanos());
+    }
+
+    static ProfileData queryStore(ProfileStore store, String fromTime, String toTime, long lastNanos) throws IOException {
+        long to = toTime != null ? toNanos(toTime) : store.getLatestNanos();
+        long from;
+        if (fromTime != null) {
+            from = toNanos(fromTime);
+        } else {
+            from = to - (lastNanos > 0 ? lastNanos : ProfileStore.Resolution.HOUR.getNanos());
+        }
+        logger.info("查询时间范围: " + Instant.ofEpochSecond(0, from) + " - " + Instant.ofEpochSecond(0, to));
+        return store.query(from, to);
+    }
+
+    private static long toNanos(String time) {
+        try {
+            Instant instant = Instant.parse(time);
+            return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("无法解析的时间: " + time + "（格式为 ISO-8601，例如 2025-05-10T11:00:00Z）");
+        }
+    }
+
+    // 解析符号并聚合，threads 为聚合使用的线程数
+    public static AggregatedProfile aggregate(ProfileData profile, int threads) {
+        ProfileAggregator aggregator = new ProfileAggregator(new SymbolResolver(profile));
+        aggregator.setParallelism(threads);
+        return aggregator.aggregate();
+    }
+
+    // 按命令行选项聚合：线程数、内联帧展开、帧粒度、标签筛选和 focus/ignore 等帧变换
+    public static AggregatedProfile aggregate(ProfileData profile, AnalyzerOptions options) {
+        return newAggregator(profile, options).aggregate();
+    }
+
+    private static ProfileAggregator newAggregator(ProfileData profile, AnalyzerOptions options) {
+        SymbolResolver resolver = new SymbolResolver(profile, options.isInlineFrames(), options.getGranularity());
+        ProfileAggregator aggregator = new ProfileAggregator(resolver);
+        aggregator.setParallelism(options.getAggregateThreads());
+        aggregator.setLabelFilter(LabelFilter.parse(options.getLabelFilters()));
+        aggregator.setFrameFilter(options.getFrameFilter());
+        if (options.getListRegex() != null) {
+            aggregator.setSourceListing(new SourceListing(resolver, options.getListRegex(), options.getSourceRoot()));
+        }
+        return aggregator;
+    }
+
+    // 按 --group-by 的标签取值分组，火焰图写到 --flamegraph 所在目录，文件名为 flamegraph-<key>-<取值>.svg
+    private static void analyzeGroups(ProfileData profile, AnalyzerOptions options) throws IOException {
+        Map<String, AggregatedProfile> groups = newAggregator(profile, options).aggregateGroups(options.getGroupBy());
+        logger.info("按标签 " + options.getGroupBy() + " 分为 " + groups.size() + " 组");
+
+        Path directory = Paths.get(options.getFlameGraphPath()).toAbsolutePath().getParent();
+        for (Map.Entry<String, AggregatedProfile> entry : groups.entrySet()) {
+            AggregatedProfile aggregate = selectSampleType(entry.getValue(), options.getSampleIndex());
+            String fileName = "flamegraph-" + fileNamePart(options.getGroupBy()) + "-"
+                + fileNamePart(entry.getKey()) + ".svg";
+            String flameGraphPath = directory.resolve(fileName).toString();
+            FlameGraphGenerator flameGraphGenerator = new FlameGraphGenerator(aggregate, flameGraphPath);
+            flameGraphGenerator.setMinWidth(options.getMinWidth());
+            flameGraphGenerator.generateFlameGraph();
+            logger.info("火焰图已生成到: " + flameGraphPath);
+
+            System.out.println("\n" + options.getGroupBy() + "=" + entry.getKey());
+            printTopReports(aggregate, options.getSampleIndex(), System.out, 10);
+        }
+    }
+
+    // 标签取值中不适合出现在文件名里的字符替换为下划线
+    private static String fileNamePart(String value) {
+        String part = value.replaceAll("[^A-Za-z0-9._-]", "_");
+        return part.isEmpty() ? "_" : part;
+    }
+
+    // 按 --sample-index（下标或类型名）选择 value 列，未指定或为 all 时保持 profile 的默认列
+    public static AggregatedProfile selectSampleType(AggregatedProfile aggregate, String sampleIndex) {
+        if (sampleIndex == null || sampleIndex.equals("all")) {
+            return aggregate;
+        }
+        return aggregate.withSampleIndex(aggregate.getProfile().findSampleIndex(sampleIndex));
+    }
+
+    // --sample-index all 时同一次聚合结果按每个 value 列分别输出 top-N，否则只输出当前列
+    public static void printTopReports(AggregatedProfile aggregate, String sampleIndex, PrintStream out, int count) {
+        if (!"all".equals(sampleIndex)) {
+            printTopFunctions(aggregate, out, count);
+            return;
+        }
+        for (int i = 0; i < aggregate.getSampleTypeCount(); i++) {
+            printTopFunctions(aggregate.withSampleIndex(i), out, count);
+        }
+    }
+
+    private static ProfileData mergeProfiles(AnalyzerOptions options) throws IOException {
+        List<Path> inputs = BatchAnalyzer.findProfiles(options.getMergeInput());
+        logger.info("合并 " + inputs.size() + " 个 profile");
+        ProfileData merged = new ProfileMerger(options.getThreads()).merge(inputs);
+        new ProfileEncoder(merged).writeGzip(Paths.get(options.getMergeOutput()));
+        logger.info("合并后的 profile 已写入: " + options.getMergeOutput());
+        return merged;
+    }
+
+    // 按累积值输出前 count 个函数，格式与 go tool pprof -top 一致，数值按当前 sample_type 的单位显示
+    public static void printTopFunctions(AggregatedProfile aggregate, PrintStream out, int count) {
+        // 从聚合结果获取性能数据
+        Map<String, Long> functionSelfTime = aggregate.getSelfTimes();
+        Map<String, Long> functionCumTime = aggregate.getCumulativeTimes();
+        
+        // 将函数转换为列表并按累积值排序
+        List<Map.Entry<String, Long>> sortedFunctions = new ArrayList<>(functionCumTime.entrySet());
+        Collections.sort(sortedFunctions, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        
+        // 总量取所有样本值之和；各函数的 cum 之和会重复计算同一样本，不能作为总数
+        long totalSamples = aggregate.getTotalSamples();
+        long percentBase = Math.max(totalSamples, 1);
+        ValueFormatter formatter = aggregate.getFormatter();
+
+        // 与 pprof 一样，"accounting for" 为所列函数的 flat 之和
+        long shownSamples = 0;
+        for (int i = 0; i < Math.min(count, sortedFunctions.size()); i++) {
+            shownSamples += functionSelfTime.getOrDefault(sortedFunctions.get(i).getKey(), 0L);
+        }
+        
+        out.println("\nType: " + aggregate.getSampleType());
+        out.println(String.format("Showing nodes accounting for %s, %.2f%% of %s total", 
+            formatter.format(shownSamples), 100.0 * shownSamples / percentBase, formatter.format(totalSamples)));
+        out.println("Showing top " + count + " nodes");
+        out.println(String.format("%-10s %-8s %-8s %-10s %-8s %s", 
+            "flat", "flat%", "sum%", "cum", "cum%", "name"));
+        
+        double sumPercent = 0;
+        for (int i = 0; i < Math.min(count, sortedFunctions.size()); i++) {
+            Map.Entry<String, Long> entry = sortedFunctions.get(i);
+            String functionName = entry.getKey();
+            long cumSamples = entry.getValue();
+            
+            // 从函数调用图获取自身时间
+            long selfSamples = functionSelfTime.getOrDefault(functionName, 0L);
+            
+            double cumPercent = 100.0 * cumSamples / percentBase;
+            double selfPercent = 100.0 * selfSamples / percentBase;
+            
+            sumPercent += selfPercent;
+            
+            out.println(String.format("%9s %7.2f%% %7.2f%% %9s %7.2f%% %s", 
+                formatter.format(selfSamples), selfPercent, sumPercent, formatter.format(cumSamples), cumPercent,
+                functionName));
+        }
+    }
 }
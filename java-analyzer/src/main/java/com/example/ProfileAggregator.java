@@ -0,0 +1,390 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// 单次遍历所有调用栈，同时构建火焰图前缀树、自身/累积时间表和调用边
+// 每个调用栈只解析一次，结果由 FlameGraphGenerator、CallGraphGenerator 和 PprofAnalyzer 共用。
+// 所有 value 列（例如 heap profile 的 alloc_objects、alloc_space、inuse_objects、inuse_space）在同一次遍历中累加，
+// 切换 sample_type 时无需重新解码或聚合。
+// 调用栈较多时按下标区间切分给进程内共享的 fork-join 线程池，每个工作线程构建自己的前缀树、计数表和调用边，
+// 再沿任务树两两合并；合并始终按区间顺序进行，结果（包括前缀树的节点编号）与线程数无关。
+// 设置了标签筛选时先挑出满足条件的调用栈，只聚合这些调用栈；focus/ignore/hide 等帧变换在解析出帧序列后、
+// 计入任何计数之前应用，火焰图、调用图和 top-N 看到的是同一份变换后的调用栈
+public class ProfileAggregator {
+    // 每个分区至少包含的调用栈数，太小的分区合并开销超过并行收益
+    private static final int MIN_PARTITION = 4096;
+    // 按标签分组时，没有该标签的样本归入的分组
+    public static final String NO_LABEL_GROUP = "(none)";
+    // 按并行度共享的线程池，批量分析和服务模式下的并发请求不再各自创建线程池；工作线程是守护线程，空闲后自动回收
+    private static final Map<Integer, ForkJoinPool> SHARED_POOLS = new ConcurrentHashMap<>();
+
+    private final SymbolResolver resolver;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private LabelFilter labelFilter;
+    private FrameFilter frameFilter;
+    private SourceListing sourceListing;
+
+    public ProfileAggregator(SymbolResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    // 聚合使用的线程数，1 表示在调用线程中串行完成
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // 只聚合标签满足条件的样本，null 表示不筛选
+    public void setLabelFilter(LabelFilter labelFilter) {
+        this.labelFilter = labelFilter;
+    }
+
+    // focus、ignore、hide、show_from、prune_from 变换，null 表示不变换
+    public void setFrameFilter(FrameFilter frameFilter) {
+        this.frameFilter = frameFilter;
+    }
+
+    // 在同一次遍历中累加所列函数的逐行 flat/cum，null 表示不做源码标注
+    public void setSourceListing(SourceListing sourceListing) {
+        this.sourceListing = sourceListing;
+    }
+
+    public AggregatedProfile aggregate() {
+        int[] selected = selectStacks();
+        FrameFilter.Matcher frames = frameMatcher();
+        int stackCount = selected.length;
+        int partition = partitionSize(stackCount);
+        Partial result;
+        if (parallelism == 1 || stackCount <= partition) {
+            result = aggregateRange(selected, frames, 0, stackCount);
+        } else {
+            result = sharedPool(parallelism).invoke(new AggregateTask(selected, frames, 0, stackCount, partition));
+        }
+        return result.toAggregatedProfile();
+    }
+
+    // 按标签 key 的取值把调用栈分组，每组单独聚合，各组在同一个线程池中并发进行；
+    // 数值标签按 "数值+单位" 命名，没有该标签的样本归入 NO_LABEL_GROUP。结果按当前 value 列的总量从大到小排列
+    public Map<String, AggregatedProfile> aggregateGroups(String key) {
+        ProfileData profile = resolver.getProfile();
+        StackTable stacks = profile.getStacks();
+        long keyIndex = -1;
+        for (int i = 1; i < profile.getStringCount(); i++) {
+            if (profile.getString(i).equals(key)) {
+                keyIndex = i;
+                break;
+            }
+        }
+
+        // 字符串值和数值分别按字符串下标、数值映射到分组编号，分组时不创建字符串
+        LongIntHashMap stringGroups = new LongIntHashMap();
+        LongIntHashMap numberGroups = new LongIntHashMap();
+        List<String> names = new ArrayList<>();
+        List<IntArrayList> members = new ArrayList<>();
+        int noLabel = -1;
+        for (int stack : selectStacks()) {
+            int group = -1;
+            for (int i = 0; i < stacks.getLabelCount(stack) && group < 0; i++) {
+                if (stacks.getLabelKey(stack, i) != keyIndex) {
+                    continue;
+                }
+                long str = stacks.getLabelStr(stack, i);
+                LongIntHashMap groups = str != 0 ? stringGroups : numberGroups;
+                long value = str != 0 ? str : stacks.getLabelNum(stack, i);
+                group = groups.get(value, -1);
+                if (group < 0) {
+                    group = names.size();
+                    groups.put(value, group);
+                    names.add(str != 0 ? profile.getString(str)
+                        : value + profile.getString(stacks.getLabelNumUnit(stack, i)));
+                    members.add(new IntArrayList());
+                }
+            }
+            if (group < 0) {
+                if (noLabel < 0) {
+                    noLabel = names.size();
+                    names.add(NO_LABEL_GROUP);
+                    members.add(new IntArrayList());
+                }
+                group = noLabel;
+            }
+            members.get(group).add(stack);
+        }
+
+        FrameFilter.Matcher frames = frameMatcher();
+        List<AggregatedProfile> results = new ArrayList<>();
+        if (parallelism == 1) {
+            for (IntArrayList group : members) {
+                results.add(aggregateRange(group.toArray(), frames, 0, group.size()).toAggregatedProfile());
+            }
+        } else {
+            ForkJoinPool pool = sharedPool(parallelism);
+            List<AggregateTask> tasks = new ArrayList<>();
+            for (IntArrayList group : members) {
+                AggregateTask task =
+                    new AggregateTask(group.toArray(), frames, 0, group.size(), partitionSize(group.size()));
+                pool.execute(task);
+                tasks.add(task);
+            }
+            for (AggregateTask task : tasks) {
+                results.add(task.join().toAggregatedProfile());
+            }
+        }
+
+        Integer[] order = new Integer[names.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(results.get(b).getTotalSamples(), results.get(a).getTotalSamples()));
+        Map<String, AggregatedProfile> groups = new LinkedHashMap<>();
+        for (int group : order) {
+            groups.put(names.get(group), results.get(group));
+        }
+        return groups;
+    }
+
+    private FrameFilter.Matcher frameMatcher() {
+        return frameFilter != null ? frameFilter.bind(resolver) : null;
+    }
+
+    private int partitionSize(int stackCount) {
+        return Math.max(MIN_PARTITION, stackCount / (parallelism * 4) + 1);
+    }
+
+    // 参与聚合的调用栈下标；标签筛选在调用线程中一次完成，正则结果按字符串下标缓存
+    private int[] selectStacks() {
+        StackTable stacks = resolver.getProfile().getStacks();
+        IntArrayList selected = new IntArrayList(stacks.size());
+        LabelFilter.Matcher matcher = labelFilter != null ? labelFilter.bind(resolver.getProfile()) : null;
+        for (int stack = 0; stack < stacks.size(); stack++) {
+            if (matcher == null || matcher.matches(stack)) {
+                selected.add(stack);
+            }
+        }
+        return selected.toArray();
+    }
+
+    // 聚合 selected[from, to) 中的调用栈，frameMatcher 为 null 时不做帧变换
+    private Partial aggregateRange(int[] selected, FrameFilter.Matcher frameMatcher, int from, int to) {
+        StackTable stacks = resolver.getProfile().getStacks();
+        int width = stacks.getValueWidth();
+        IntArrayList frames = new IntArrayList();
+        Partial partial = new Partial(resolver.getFrameCount(), width);
+        long[] sampleValues = new long[width];
+        int[] visited = new int[resolver.getFrameCount()];
+        int generation = 0;
+        IntArrayList lines = new IntArrayList();
+        int[] visitedSlots = sourceListing != null ? new int[sourceListing.getSlotCount()] : null;
+
+        for (int index = from; index < to; index++) {
+            int stack = selected[index];
+
+            // frames 按从叶子到根的顺序排列；被 focus/ignore/show_from 丢弃的调用栈不计入总量
+            int depth = resolver.resolveStack(stacks, stack, frames);
+            if (frameMatcher != null) {
+                if (!frameMatcher.apply(frames)) {
+                    continue;
+                }
+                depth = frames.size();
+            }
+            for (int column = 0; column < width; column++) {
+                sampleValues[column] = stacks.getValue(stack, column);
+                partial.totals[column] += sampleValues[column];
+            }
+            // visited 记录帧最近一次被计入时的调用栈编号，每个调用栈换一个编号，无需清空
+            if (++generation == 0) {
+                Arrays.fill(visited, 0);
+                if (visitedSlots != null) {
+                    Arrays.fill(visitedSlots, 0);
+                }
+                generation = 1;
+            }
+            if (sourceListing != null) {
+                addLineCosts(partial.listingCosts, stacks, stack, sampleValues, lines, visitedSlots, generation);
+            }
+            if (depth == 0) {
+                continue;
+            }
+
+            // 火焰图：按帧下标插入前缀树，深度和热点统计在插入时完成
+            partial.trie.insert(frames, sampleValues);
+
+            // 自身时间：只有调用栈顶部的函数（索引0）获得自身时间
+            int leaf = frames.get(0);
+            for (int column = 0; column < width; column++) {
+                partial.selfValues[column][leaf] += sampleValues[column];
+            }
+            partial.selfSeen[leaf] = true;
+
+            // 累积时间：调用栈中的每个函数获得样本的完整权重，递归出现多次也只计一次
+            for (int i = 0; i < depth; i++) {
+                int frame = frames.get(i);
+                if (visited[frame] != generation) {
+                    visited[frame] = generation;
+                    for (int column = 0; column < width; column++) {
+                        partial.cumulativeValues[column][frame] += sampleValues[column];
+                    }
+                    partial.cumulativeSeen[frame] = true;
+                }
+            }
+
+            // 调用关系，以 (调用方, 被调用方) 帧下标打包成 long 去重
+            for (int i = 0; i < depth - 1; i++) {
+                int caller = frames.get(i);
+                int callee = frames.get(i + 1);
+
+                // 避免自调用的环
+                if (caller != callee) {
+                    partial.addEdge(caller, callee);
+                }
+            }
+        }
+        return partial;
+    }
+
+    // 源码标注：叶子所在的行获得 flat，调用栈中出现的每一行及其所属函数获得 cum，同一调用栈中只计一次
+    private void addLineCosts(SourceListing.Costs costs, StackTable stacks, int stack, long[] sampleValues,
+                              IntArrayList lines, int[] visitedSlots, int generation) {
+        int count = sourceListing.resolveLines(stacks, stack, lines);
+        for (int i = 0; i < count; i++) {
+            int slot = lines.get(i);
+            if (slot < 0) {
+                continue;
+            }
+            int routineSlot = sourceListing.getRoutineSlot(slot);
+            for (int column = 0; column < sampleValues.length; column++) {
+                if (i == 0) {
+                    costs.flat[column][slot] += sampleValues[column];
+                    costs.flat[column][routineSlot] += sampleValues[column];
+                }
+                if (visitedSlots[slot] != generation) {
+                    costs.cum[column][slot] += sampleValues[column];
+                }
+                if (visitedSlots[routineSlot] != generation) {
+                    costs.cum[column][routineSlot] += sampleValues[column];
+                }
+            }
+            visitedSlots[slot] = generation;
+            visitedSlots[routineSlot] = generation;
+        }
+    }
+
+    // 同一进程内相同并行度的聚合、合并共用一个线程池
+    static ForkJoinPool sharedPool(int parallelism) {
+        return SHARED_POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    private class AggregateTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] selected;
+        private final FrameFilter.Matcher frameMatcher;
+        private final int from;
+        private final int to;
+        private final int partition;
+
+        AggregateTask(int[] selected, FrameFilter.Matcher frameMatcher, int from, int to, int partition) {
+            this.selected = selected;
+            this.frameMatcher = frameMatcher;
+            this.from = from;
+            this.to = to;
+            this.partition = partition;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= partition) {
+                return aggregateRange(selected, frameMatcher, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            AggregateTask right = new AggregateTask(selected, frameMatcher, middle, to, partition);
+            right.fork();
+            Partial left = new AggregateTask(selected, frameMatcher, from, middle, partition).compute();
+            left.merge(right.join());
+            return left;
+        }
+    }
+
+    // 一个分区的聚合结果，计数表按 [value 列][帧下标] 索引
+    private class Partial {
+        final StackTrie trie;
+        final long[][] selfValues;
+        final long[][] cumulativeValues;
+        // 值为 0 的样本也会让函数出现在表中，与按名称合并时的行为一致
+        final boolean[] selfSeen;
+        final boolean[] cumulativeSeen;
+        final LongIntHashMap edgeIndex = new LongIntHashMap();
+        final LongArrayList edges = new LongArrayList();
+        final long[] totals;
+        final SourceListing.Costs listingCosts;
+
+        Partial(int frameCount, int width) {
+            trie = new StackTrie(frameCount, width);
+            selfValues = new long[width][frameCount];
+            cumulativeValues = new long[width][frameCount];
+            selfSeen = new boolean[frameCount];
+            cumulativeSeen = new boolean[frameCount];
+            totals = new long[width];
+            listingCosts = sourceListing != null ? new SourceListing.Costs(width, sourceListing.getSlotCount()) : null;
+        }
+
+        void addEdge(int caller, int callee) {
+            long edge = ((long) caller << 32) | (callee & 0xFFFFFFFFL);
+            if (edgeIndex.get(edge, -1) < 0) {
+                edgeIndex.put(edge, edges.size());
+                edges.add(edge);
+            }
+        }
+
+        // 把排在后面的分区并入本分区；前缀树按 right 的节点创建顺序嫁接，
+        // 新节点的编号与串行插入时一致
+        void merge(Partial right) {
+            int[] identity = new int[selfSeen.length];
+            for (int frame = 0; frame < identity.length; frame++) {
+                identity[frame] = frame;
+            }
+            trie.graft(right.trie, identity, true);
+            for (int column = 0; column < totals.length; column++) {
+                for (int frame = 0; frame < selfSeen.length; frame++) {
+                    selfValues[column][frame] += right.selfValues[column][frame];
+                    cumulativeValues[column][frame] += right.cumulativeValues[column][frame];
+                }
+                totals[column] += right.totals[column];
+            }
+            for (int frame = 0; frame < selfSeen.length; frame++) {
+                selfSeen[frame] |= right.selfSeen[frame];
+                cumulativeSeen[frame] |= right.cumulativeSeen[frame];
+            }
+            for (int i = 0; i < right.edges.size(); i++) {
+                long edge = right.edges.get(i);
+                addEdge((int) (edge >>> 32), (int) edge);
+            }
+            if (listingCosts != null) {
+                listingCosts.merge(right.listingCosts);
+            }
+        }
+
+        // 计数表直接作为只读视图交出；调用边按排序后的顺序生成，结果与分区方式无关
+        AggregatedProfile toAggregatedProfile() {
+            long[] sortedEdges = edges.toArray();
+            Arrays.sort(sortedEdges);
+            Map<String, Set<String>> callEdges = new HashMap<>();
+            for (long edge : sortedEdges) {
+                String caller = resolver.getFrameName((int) (edge >>> 32));
+                String callee = resolver.getFrameName((int) edge);
+                callEdges.computeIfAbsent(caller, k -> new HashSet<>()).add(callee);
+            }
+            return new AggregatedProfile(resolver, trie, selfValues, cumulativeValues, selfSeen, cumulativeSeen,
+                callEdges, totals, resolver.getProfile().getDefaultSampleIndex(), sourceListing, listingCosts);
+        }
+    }
+}
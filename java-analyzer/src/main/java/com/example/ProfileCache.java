@@ -0,0 +1,585 @@
+package com.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// 解析结果的列式磁盘缓存
+// 第一次解析 profile 后把 ProfileData 按列写入缓存目录，文件名为 profile 内容的 SHA-256；
+// 之后再分析同一个 profile 时通过 FileChannel.map 映射缓存文件，按列批量读回，跳过 gzip 解压和 protobuf 解码。
+// 读回时各列仍复制到堆上的数组，并经 ProfileData.Builder 重建 StackTable，节省的只是解压和解码，不省内存。
+// 文件内容变化后哈希随之变化，旧缓存自然失效；缓存头部也保存哈希，读取时再校验一次。
+// 为了命中时不必每次读取整个源文件计算哈希，源文件路径对应的大小、修改时间和哈希另存为 .index 文件，
+// 两者不变时沿用记录的哈希，进程内也保留一份同样的记录。
+// 缓存目录的总大小有上限，每次写入后按修改时间删除最旧的缓存文件，命中时刷新修改时间，近似于 LRU。
+// 调用栈以前缀树保存：节点只记录父节点和 location id，每个调用栈指向它的叶子节点，共同前缀只存一份
+public class ProfileCache {
+    private static final Logger logger = Logger.getLogger(ProfileCache.class.getName());
+    private static final byte[] MAGIC = "PPROFCOL".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HASH_BYTES = 32;
+    // 计算哈希时每次映射的字节数
+    private static final long HASH_CHUNK = 1L << 30;
+    // .index 文件的内容：大小、修改时间（纳秒）和内容哈希
+    private static final int INDEX_BYTES = 8 + 8 + HASH_BYTES;
+    // 源文件的绝对路径 -> 大小、修改时间和内容哈希
+    private static final Map<Path, FileHash> HASHES = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long maxBytes;
+    private int readThreads = Runtime.getRuntime().availableProcessors();
+
+    public ProfileCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // 未命中时解析 profile 使用的解压线程数
+    public void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    // 命中缓存时直接映射读取，否则解析 profile 并写入缓存；缓存读写失败只记录警告，不影响分析
+    public ProfileData read(Path profile) throws IOException {
+        return read(profile, indexedHash(profile));
+    }
+
+    // 先查进程内的记录，再查缓存目录中的 .index 文件，大小和修改时间都与记录相同时直接返回记录的哈希；
+    // 否则读取整个文件重新计算，并更新两处记录
+    byte[] indexedHash(Path profile) throws IOException {
+        Path key = profile.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        FileHash known = HASHES.get(key);
+        if (known != null && known.matches(attributes)) {
+            return known.hash;
+        }
+        byte[] pathHash = digest().digest(key.toString().getBytes(StandardCharsets.UTF_8));
+        Path indexFile = directory.resolve(toHex(pathHash) + ".index");
+        known = readIndex(indexFile);
+        if (known == null || !known.matches(attributes)) {
+            known = new FileHash(attributes, hash(key));
+            try {
+                writeIndex(known, indexFile);
+            } catch (IOException e) {
+                logger.warning("写入缓存索引失败: " + indexFile + " (" + e.getMessage() + ")");
+            }
+        }
+        HASHES.put(key, known);
+        return known.hash;
+    }
+
+    // 不使用磁盘缓存时（例如 HTTP 服务未指定 --cache-dir）只查进程内的记录
+    static byte[] memoizedHash(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        FileHash known = HASHES.get(key);
+        if (known == null || !known.matches(attributes)) {
+            known = new FileHash(attributes, hash(key));
+            HASHES.put(key, known);
+        }
+        return known.hash;
+    }
+
+    // 文件不存在或长度不对（例如旧版本写入的）时返回 null
+    private static FileHash readIndex(Path indexFile) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(indexFile);
+        } catch (IOException e) {
+            return null;
+        }
+        if (bytes.length != INDEX_BYTES) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        long size = in.getLong();
+        long modifiedNanos = in.getLong();
+        byte[] hash = new byte[HASH_BYTES];
+        in.get(hash);
+        return new FileHash(size, modifiedNanos, hash);
+    }
+
+    // 与缓存文件一样先写临时文件再原子替换
+    private static void writeIndex(FileHash known, Path indexFile) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(INDEX_BYTES);
+        out.putLong(known.size).putLong(known.modifiedNanos).put(known.hash);
+        Files.createDirectories(indexFile.getParent());
+        Path temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, out.array());
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // 调用方已计算过内容哈希时使用，避免重复读取文件
+    ProfileData read(Path profile, byte[] hash) throws IOException {
+        Path cacheFile = directory.resolve(toHex(hash) + ".colcache");
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                ProfileData cached = load(cacheFile, hash);
+                if (cached != null) {
+                    logger.info("从缓存读取: " + cacheFile);
+                    touch(cacheFile);
+                    return cached;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warning("缓存文件无法读取，重新解析: " + cacheFile + " (" + e.getMessage() + ")");
+            }
+        }
+        ProfileData data = ProfileReader.read(profile, readThreads);
+        try {
+            write(data, hash, cacheFile);
+            evict();
+        } catch (IOException e) {
+            logger.warning("写入缓存失败: " + cacheFile + " (" + e.getMessage() + ")");
+        }
+        return data;
+    }
+
+    // 只读的缓存目录无法刷新修改时间，不影响读取
+    private static void touch(Path cacheFile) {
+        try {
+            Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.fine("无法刷新缓存文件的修改时间: " + cacheFile);
+        }
+    }
+
+    // 缓存文件和索引文件总大小超过上限时从最旧的开始删除；其他进程可能同时在删除，已不存在的文件直接跳过
+    private void evict() throws IOException {
+        Map<Path, BasicFileAttributes> files = new HashMap<>();
+        long total = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*.{colcache,index}")) {
+            for (Path file : entries) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    files.put(file, attributes);
+                    total += attributes.size();
+                } catch (NoSuchFileException e) {
+                    // 列目录之后被其他进程删除
+                }
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        List<Path> oldestFirst = new ArrayList<>(files.keySet());
+        oldestFirst.sort(Comparator.comparing(file -> files.get(file).lastModifiedTime()));
+        for (Path file : oldestFirst) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Files.deleteIfExists(file);
+            total -= files.get(file).size();
+            logger.info("缓存目录超出上限 " + (maxBytes >> 20) + " MB，删除: " + file);
+        }
+    }
+
+    static byte[] hash(Path file) throws IOException {
+        MessageDigest digest = digest();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_CHUNK) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_CHUNK, size - position)));
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // 先写临时文件再原子替换，并发分析同一个 profile 时不会读到写了一半的缓存
+    static void write(ProfileData data, byte[] hash, Path cacheFile) throws IOException {
+        Files.createDirectories(cacheFile.getParent());
+        Path temp = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.write(hash);
+                writeSymbols(data, out);
+                writeStacks(data.getStacks(), out);
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // 字符串表、sample_type、头部字段和 Mapping / Function / Location 各列，不含调用栈；ProfileStore 的符号字典也用这一格式
+    static void writeSymbols(ProfileData data, DataOutputStream out) throws IOException {
+        out.writeInt(data.getStringCount());
+        for (int i = 0; i < data.getStringCount(); i++) {
+            byte[] bytes = data.getString(i).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(data.getSampleTypeCount());
+        for (int i = 0; i < data.getSampleTypeCount(); i++) {
+            out.writeLong(data.getSampleTypeType(i));
+            out.writeLong(data.getSampleTypeUnit(i));
+        }
+
+        out.writeLong(data.getDropFrames());
+        out.writeLong(data.getKeepFrames());
+        out.writeLong(data.getTimeNanos());
+        out.writeLong(data.getDurationNanos());
+        out.writeLong(data.getPeriodTypeType());
+        out.writeLong(data.getPeriodTypeUnit());
+        out.writeLong(data.getPeriod());
+        out.writeLong(data.getDefaultSampleType());
+        out.writeLong(data.getDocUrl());
+        long[] comments = data.getComments();
+        out.writeInt(comments.length);
+        for (long comment : comments) {
+            out.writeLong(comment);
+        }
+
+        int mappings = data.getMappingCount();
+        out.writeInt(mappings);
+        for (int i = 0; i < mappings; i++) {
+            out.writeLong(data.getMappingId(i));
+        }
+        for (int i = 0; i < mappings; i++) {
+            out.writeLong(data.getMappingMemoryStart(i));
+        }
+        for (int i = 0; i < mappings; i++) {
+            out.writeLong(data.getMappingMemoryLimit(i));
+        }
+        for (int i = 0; i < mappings; i++) {
+            out.writeLong(data.getMappingFileOffset(i));
+        }
+        for (int i = 0; i < mappings; i++) {
+            out.writeLong(data.getMappingFilename(i));
+        }
+        for (int i = 0; i < mappings; i++) {
+            out.writeLong(data.getMappingBuildId(i));
+        }
+        for (int i = 0; i < mappings; i++) {
+            out.writeInt(data.getMappingFlags(i));
+        }
+
+        int functions = data.getFunctionCount();
+        out.writeInt(functions);
+        for (int i = 0; i < functions; i++) {
+            out.writeLong(data.getFunctionId(i));
+        }
+        for (int i = 0; i < functions; i++) {
+            out.writeLong(data.getFunctionName(i));
+        }
+        for (int i = 0; i < functions; i++) {
+            out.writeLong(data.getFunctionSystemName(i));
+        }
+        for (int i = 0; i < functions; i++) {
+            out.writeLong(data.getFunctionFilename(i));
+        }
+        for (int i = 0; i < functions; i++) {
+            out.writeLong(data.getFunctionStartLine(i));
+        }
+
+        int locations = data.getLocationCount();
+        out.writeInt(locations);
+        for (int i = 0; i < locations; i++) {
+            out.writeLong(data.getLocationId(i));
+        }
+        for (int i = 0; i < locations; i++) {
+            out.writeLong(data.getLocationMappingId(i));
+        }
+        for (int i = 0; i < locations; i++) {
+            out.writeLong(data.getLocationAddress(i));
+        }
+        for (int i = 0; i < locations; i++) {
+            out.writeByte(data.isLocationFolded(i) ? 1 : 0);
+        }
+        int lineCount = 0;
+        out.writeInt(0);
+        for (int i = 0; i < locations; i++) {
+            lineCount += data.getLocationLineCount(i);
+            out.writeInt(lineCount);
+        }
+        for (int i = 0; i < locations; i++) {
+            for (int line = 0; line < data.getLocationLineCount(i); line++) {
+                out.writeLong(data.getLocationLineFunctionId(i, line));
+            }
+        }
+        for (int i = 0; i < locations; i++) {
+            for (int line = 0; line < data.getLocationLineCount(i); line++) {
+                out.writeLong(data.getLocationLineNumber(i, line));
+            }
+        }
+    }
+
+    // 调用栈按从根到叶子的顺序插入前缀树，(父节点 + 1, location 的稠密编号) 打包成 long 查找子节点
+    static void writeStacks(StackTable stacks, DataOutputStream out) throws IOException {
+        LongIntHashMap locationKeys = new LongIntHashMap();
+        LongIntHashMap children = new LongIntHashMap();
+        IntArrayList nodeParents = new IntArrayList();
+        LongArrayList nodeLocations = new LongArrayList();
+        int[] stackNodes = new int[stacks.size()];
+        for (int stack = 0; stack < stacks.size(); stack++) {
+            int node = -1;
+            for (int i = stacks.getDepth(stack) - 1; i >= 0; i--) {
+                long locationId = stacks.getLocationId(stack, i);
+                int locationKey = locationKeys.get(locationId, -1);
+                if (locationKey < 0) {
+                    locationKey = locationKeys.size();
+                    locationKeys.put(locationId, locationKey);
+                }
+                long key = ((long) (node + 1) << 32) | locationKey;
+                int child = children.get(key, -1);
+                if (child < 0) {
+                    child = nodeParents.size();
+                    children.put(key, child);
+                    nodeParents.add(node);
+                    nodeLocations.add(locationId);
+                }
+                node = child;
+            }
+            stackNodes[stack] = node;
+        }
+
+        int width = stacks.getValueWidth();
+        out.writeInt(width);
+        out.writeInt(stacks.size());
+        out.writeInt(nodeParents.size());
+        for (int node = 0; node < nodeParents.size(); node++) {
+            out.writeInt(nodeParents.get(node));
+        }
+        for (int node = 0; node < nodeLocations.size(); node++) {
+            out.writeLong(nodeLocations.get(node));
+        }
+        for (int stackNode : stackNodes) {
+            out.writeInt(stackNode);
+        }
+        int labelCount = 0;
+        out.writeInt(0);
+        for (int stack = 0; stack < stacks.size(); stack++) {
+            labelCount += stacks.getLabelCount(stack);
+            out.writeInt(labelCount);
+        }
+        for (int stack = 0; stack < stacks.size(); stack++) {
+            for (int i = 0; i < stacks.getLabelCount(stack); i++) {
+                out.writeLong(stacks.getLabelKey(stack, i));
+                out.writeLong(stacks.getLabelStr(stack, i));
+                out.writeLong(stacks.getLabelNum(stack, i));
+                out.writeLong(stacks.getLabelNumUnit(stack, i));
+            }
+        }
+        for (int stack = 0; stack < stacks.size(); stack++) {
+            for (int column = 0; column < width; column++) {
+                out.writeLong(stacks.getValue(stack, column));
+            }
+        }
+    }
+
+    // 版本或哈希不符时返回 null
+    static ProfileData load(Path cacheFile, byte[] hash) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        byte[] magic = new byte[MAGIC.length];
+        byte[] storedHash = new byte[HASH_BYTES];
+        in.get(magic);
+        if (!java.util.Arrays.equals(magic, MAGIC) || in.getInt() != VERSION) {
+            return null;
+        }
+        in.get(storedHash);
+        if (!java.util.Arrays.equals(storedHash, hash)) {
+            return null;
+        }
+
+        ProfileData.Builder builder = new ProfileData.Builder();
+        readSymbols(in, builder);
+        builder.setStacks(readStacks(in));
+        return builder.build();
+    }
+
+    static void readSymbols(ByteBuffer in, ProfileData.Builder builder) {
+        int strings = in.getInt();
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < strings; i++) {
+            int length = in.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            in.get(bytes, 0, length);
+            builder.visitString(i, new String(bytes, 0, length, StandardCharsets.UTF_8));
+        }
+
+        int sampleTypes = in.getInt();
+        for (int i = 0; i < sampleTypes; i++) {
+            builder.visitSampleType(in.getLong(), in.getLong());
+        }
+
+        builder.visitHeader(ProfileDecoder.FIELD_DROP_FRAMES, in.getLong());
+        builder.visitHeader(ProfileDecoder.FIELD_KEEP_FRAMES, in.getLong());
+        builder.visitHeader(ProfileDecoder.FIELD_TIME_NANOS, in.getLong());
+        builder.visitHeader(ProfileDecoder.FIELD_DURATION_NANOS, in.getLong());
+        long periodTypeType = in.getLong();
+        long periodTypeUnit = in.getLong();
+        builder.visitPeriodType(periodTypeType, periodTypeUnit);
+        builder.visitHeader(ProfileDecoder.FIELD_PERIOD, in.getLong());
+        builder.visitHeader(ProfileDecoder.FIELD_DEFAULT_SAMPLE_TYPE, in.getLong());
+        builder.visitHeader(ProfileDecoder.FIELD_DOC_URL, in.getLong());
+        int comments = in.getInt();
+        for (int i = 0; i < comments; i++) {
+            builder.visitComment(in.getLong());
+        }
+
+        int mappings = in.getInt();
+        long[] mappingIds = readLongs(in, mappings);
+        long[] memoryStarts = readLongs(in, mappings);
+        long[] memoryLimits = readLongs(in, mappings);
+        long[] fileOffsets = readLongs(in, mappings);
+        long[] mappingFilenames = readLongs(in, mappings);
+        long[] buildIds = readLongs(in, mappings);
+        int[] flags = readInts(in, mappings);
+        for (int i = 0; i < mappings; i++) {
+            builder.visitMapping(mappingIds[i], memoryStarts[i], memoryLimits[i], fileOffsets[i],
+                mappingFilenames[i], buildIds[i], flags[i]);
+        }
+
+        int functions = in.getInt();
+        long[] functionIds = readLongs(in, functions);
+        long[] names = readLongs(in, functions);
+        long[] systemNames = readLongs(in, functions);
+        long[] functionFilenames = readLongs(in, functions);
+        long[] startLines = readLongs(in, functions);
+        for (int i = 0; i < functions; i++) {
+            builder.visitFunction(functionIds[i], names[i], systemNames[i], functionFilenames[i], startLines[i]);
+        }
+
+        int locations = in.getInt();
+        long[] locationIds = readLongs(in, locations);
+        long[] locationMappings = readLongs(in, locations);
+        long[] addresses = readLongs(in, locations);
+        byte[] folded = new byte[locations];
+        in.get(folded);
+        int[] lineStarts = readInts(in, locations + 1);
+        long[] lineFunctionIds = readLongs(in, lineStarts[locations]);
+        long[] lineNumbers = readLongs(in, lineStarts[locations]);
+        ProfileVisitor.LocationRecord location = new ProfileVisitor.LocationRecord();
+        for (int i = 0; i < locations; i++) {
+            location.clear();
+            location.id = locationIds[i];
+            location.mappingId = locationMappings[i];
+            location.address = addresses[i];
+            location.isFolded = folded[i] != 0;
+            for (int line = lineStarts[i]; line < lineStarts[i + 1]; line++) {
+                location.addLine(lineFunctionIds[line], lineNumbers[line]);
+            }
+            builder.visitLocation(location);
+        }
+    }
+
+    // 从叶子节点沿父指针走到根，得到的正是从叶子到根的 location id 序列
+    static StackTable readStacks(ByteBuffer in) {
+        int width = in.getInt();
+        int stackCount = in.getInt();
+        int nodeCount = in.getInt();
+        int[] nodeParents = readInts(in, nodeCount);
+        long[] nodeLocations = readLongs(in, nodeCount);
+        int[] stackNodes = readInts(in, stackCount);
+        int[] labelStarts = readInts(in, stackCount + 1);
+        long[] labels = readLongs(in, labelStarts[stackCount] * StackTable.LABEL_FIELDS);
+        long[] values = readLongs(in, stackCount * width);
+
+        StackTable stacks = new StackTable(width);
+        long[] locationIds = new long[64];
+        long[] stackLabels = new long[16];
+        long[] stackValues = new long[width];
+        for (int stack = 0; stack < stackCount; stack++) {
+            int depth = 0;
+            for (int node = stackNodes[stack]; node >= 0; node = nodeParents[node]) {
+                if (depth == locationIds.length) {
+                    locationIds = java.util.Arrays.copyOf(locationIds, depth * 2);
+                }
+                locationIds[depth++] = nodeLocations[node];
+            }
+            int labelCount = labelStarts[stack + 1] - labelStarts[stack];
+            if (labelCount * StackTable.LABEL_FIELDS > stackLabels.length) {
+                stackLabels = new long[labelCount * StackTable.LABEL_FIELDS * 2];
+            }
+            System.arraycopy(labels, labelStarts[stack] * StackTable.LABEL_FIELDS, stackLabels, 0,
+                labelCount * StackTable.LABEL_FIELDS);
+            System.arraycopy(values, stack * width, stackValues, 0, width);
+            stacks.addUnique(locationIds, depth, stackLabels, labelCount, stackValues, width);
+        }
+        return stacks;
+    }
+
+    private static long[] readLongs(ByteBuffer in, int count) {
+        long[] values = new long[count];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + count * Long.BYTES);
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static class FileHash {
+        final long size;
+        final long modifiedNanos;
+        final byte[] hash;
+
+        FileHash(long size, long modifiedNanos, byte[] hash) {
+            this.size = size;
+            this.modifiedNanos = modifiedNanos;
+            this.hash = hash;
+        }
+
+        FileHash(BasicFileAttributes attributes, byte[] hash) {
+            this(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), hash);
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && modifiedNanos == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.example;
+
+import com.google.protobuf.CodedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 列式存储的 profile 数据
+// 样本在解码阶段按调用栈合并进 StackTable；Location、Function、Mapping 以基本类型数组按列保存，
+// 下标即它们在输入中出现的顺序（不是 proto 中的 id）
+public class ProfileData {
+    private final String[] stringTable;
+    private final long[] sampleTypes;          // 每两个元素一组：type, unit
+    private final StackTable stacks;
+
+    private final long[] locationIds;
+    private final long[] locationMappingIds;
+    private final long[] locationAddresses;
+    private final boolean[] locationFolded;
+    private final int[] locationLineStart;     // CSR 偏移，长度为 location 数 + 1
+    private final long[] lineFunctionIds;
+    private final long[] lineNumbers;
+
+    private final long[] functionIds;
+    private final long[] functionNames;
+    private final long[] functionSystemNames;
+    private final long[] functionFilenames;
+    private final long[] functionStartLines;
+
+    private final long[] mappingIds;
+    private final long[] mappingMemoryStarts;
+    private final long[] mappingMemoryLimits;
+    private final long[] mappingFileOffsets;
+    private final long[] mappingFilenames;
+    private final long[] mappingBuildIds;
+    private final int[] mappingFlags;
+
+    private final long dropFrames;
+    private final long keepFrames;
+    private final long timeNanos;
+    private final long durationNanos;
+    private final long periodTypeType;
+    private final long periodTypeUnit;
+    private final long period;
+    private final long[] comments;
+    private final long defaultSampleType;
+    private final long docUrl;
+
+    private ProfileData(Builder builder) {
+        this.stringTable = builder.strings.toArray(new String[0]);
+        this.sampleTypes = builder.sampleTypes.toArray();
+        this.stacks = builder.stacks;
+
+        this.locationIds = builder.locationIds.toArray();
+        this.locationMappingIds = builder.locationMappingIds.toArray();
+        this.locationAddresses = builder.locationAddresses.toArray();
+        this.locationFolded = Arrays.copyOf(builder.locationFolded, builder.locationIds.size());
+        this.locationLineStart = Arrays.copyOf(builder.locationLineStart, builder.locationIds.size() + 1);
+        this.lineFunctionIds = builder.lineFunctionIds.toArray();
+        this.lineNumbers = builder.lineNumbers.toArray();
+
+        this.functionIds = builder.functionIds.toArray();
+        this.functionNames = builder.functionNames.toArray();
+        this.functionSystemNames = builder.functionSystemNames.toArray();
+        this.functionFilenames = builder.functionFilenames.toArray();
+        this.functionStartLines = builder.functionStartLines.toArray();
+
+        this.mappingIds = builder.mappingIds.toArray();
+        this.mappingMemoryStarts = builder.mappingMemoryStarts.toArray();
+        this.mappingMemoryLimits = builder.mappingMemoryLimits.toArray();
+        this.mappingFileOffsets = builder.mappingFileOffsets.toArray();
+        this.mappingFilenames = builder.mappingFilenames.toArray();
+        this.mappingBuildIds = builder.mappingBuildIds.toArray();
+        this.mappingFlags = Arrays.copyOf(builder.mappingFlags, builder.mappingIds.size());
+
+        this.dropFrames = builder.dropFrames;
+        this.keepFrames = builder.keepFrames;
+        this.timeNanos = builder.timeNanos;
+        this.durationNanos = builder.durationNanos;
+        this.periodTypeType = builder.periodTypeType;
+        this.periodTypeUnit = builder.periodTypeUnit;
+        this.period = builder.period;
+        this.comments = builder.comments.toArray();
+        this.defaultSampleType = builder.defaultSampleType;
+        this.docUrl = builder.docUrl;
+    }
+
+    // 与 symbols 共用符号表（各数组只读，不复制），调用栈和时间取自参数
+    private ProfileData(ProfileData symbols, StackTable stacks, long timeNanos, long durationNanos) {
+        this.stringTable = symbols.stringTable;
+        this.sampleTypes = symbols.sampleTypes;
+        this.stacks = stacks;
+
+        this.locationIds = symbols.locationIds;
+        this.locationMappingIds = symbols.locationMappingIds;
+        this.locationAddresses = symbols.locationAddresses;
+        this.locationFolded = symbols.locationFolded;
+        this.locationLineStart = symbols.locationLineStart;
+        this.lineFunctionIds = symbols.lineFunctionIds;
+        this.lineNumbers = symbols.lineNumbers;
+
+        this.functionIds = symbols.functionIds;
+        this.functionNames = symbols.functionNames;
+        this.functionSystemNames = symbols.functionSystemNames;
+        this.functionFilenames = symbols.functionFilenames;
+        this.functionStartLines = symbols.functionStartLines;
+
+        this.mappingIds = symbols.mappingIds;
+        this.mappingMemoryStarts = symbols.mappingMemoryStarts;
+        this.mappingMemoryLimits = symbols.mappingMemoryLimits;
+        this.mappingFileOffsets = symbols.mappingFileOffsets;
+        this.mappingFilenames = symbols.mappingFilenames;
+        this.mappingBuildIds = symbols.mappingBuildIds;
+        this.mappingFlags = symbols.mappingFlags;
+
+        this.dropFrames = symbols.dropFrames;
+        this.keepFrames = symbols.keepFrames;
+        this.timeNanos = timeNanos;
+        this.durationNanos = durationNanos;
+        this.periodTypeType = symbols.periodTypeType;
+        this.periodTypeUnit = symbols.periodTypeUnit;
+        this.period = symbols.period;
+        this.comments = symbols.comments;
+        this.defaultSampleType = symbols.defaultSampleType;
+        this.docUrl = symbols.docUrl;
+    }
+
+    // 符号表与本对象相同、调用栈和时间替换为给定值的 profile，例如由时序库的符号字典和汇总后的调用栈拼出查询结果
+    ProfileData withStacks(StackTable stacks, long timeNanos, long durationNanos) {
+        return new ProfileData(this, stacks, timeNanos, durationNanos);
+    }
+
+    // 从未压缩的 protobuf 流中读取
+    public static ProfileData read(InputStream inputStream) throws IOException {
+        Builder builder = new Builder();
+        new ProfileDecoder(builder).decode(inputStream);
+        return builder.build();
+    }
+
+    // 从 CodedInputStream 读取，例如包装了内存映射文件的输入
+    public static ProfileData read(CodedInputStream input) throws IOException {
+        Builder builder = new Builder();
+        new ProfileDecoder(builder).decode(input);
+        return builder.build();
+    }
+
+    public String getString(long index) {
+        return index >= 0 && index < stringTable.length ? stringTable[(int) index] : "";
+    }
+
+    public int getStringCount() {
+        return stringTable.length;
+    }
+
+    public int getSampleTypeCount() {
+        return sampleTypes.length / 2;
+    }
+
+    public long getSampleTypeType(int index) {
+        return sampleTypes[index * 2];
+    }
+
+    public long getSampleTypeUnit(int index) {
+        return sampleTypes[index * 2 + 1];
+    }
+
+    // value 列的类型名和单位，缺少 sample_type 描述的列返回空串
+    public String getSampleTypeName(int index) {
+        return index < getSampleTypeCount() ? getString(getSampleTypeType(index)) : "";
+    }
+
+    public String getSampleUnitName(int index) {
+        return index < getSampleTypeCount() ? getString(getSampleTypeUnit(index)) : "";
+    }
+
+    // 未指定时使用的 value 列：default_sample_type 对应的列，否则为最后一列，与 pprof 相同
+    public int getDefaultSampleIndex() {
+        int count = getSampleTypeCount();
+        if (defaultSampleType != 0) {
+            for (int i = 0; i < count; i++) {
+                if (getSampleTypeType(i) == defaultSampleType) {
+                    return i;
+                }
+            }
+        }
+        return Math.max(count - 1, 0);
+    }
+
+    // 按下标或类型名（例如 alloc_space、inuse_space、contentions、delay）查找 value 列
+    public int findSampleIndex(String sampleType) {
+        int count = Math.max(getSampleTypeCount(), stacks.getValueWidth());
+        if (sampleType.matches("\\d+")) {
+            int index = Integer.parseInt(sampleType);
+            if (index < count) {
+                return index;
+            }
+        } else {
+            for (int i = 0; i < getSampleTypeCount(); i++) {
+                if (getSampleTypeName(i).equals(sampleType)) {
+                    return i;
+                }
+            }
+        }
+        StringBuilder available = new StringBuilder();
+        for (int i = 0; i < getSampleTypeCount(); i++) {
+            available.append(i > 0 ? ", " : "").append(i).append('=').append(getSampleTypeName(i));
+        }
+        throw new IllegalArgumentException("profile 中没有 sample_type: " + sampleType + "（可选 " + available + "）");
+    }
+
+    public StackTable getStacks() {
+        return stacks;
+    }
+
+    public int getLocationCount() {
+        return locationIds.length;
+    }
+
+    public long getLocationId(int location) {
+        return locationIds[location];
+    }
+
+    public long getLocationMappingId(int location) {
+        return locationMappingIds[location];
+    }
+
+    public long getLocationAddress(int location) {
+        return locationAddresses[location];
+    }
+
+    public boolean isLocationFolded(int location) {
+        return locationFolded[location];
+    }
+
+    public int getLocationLineCount(int location) {
+        return locationLineStart[location + 1] - locationLineStart[location];
+    }
+
+    public long getLocationLineFunctionId(int location, int line) {
+        return lineFunctionIds[locationLineStart[location] + line];
+    }
+
+    public long getLocationLineNumber(int location, int line) {
+        return lineNumbers[locationLineStart[location] + line];
+    }
+
+    public int getFunctionCount() {
+        return functionIds.length;
+    }
+
+    public long getFunctionId(int function) {
+        return functionIds[function];
+    }
+
+    public long getFunctionName(int function) {
+        return functionNames[function];
+    }
+
+    public long getFunctionSystemName(int function) {
+        return functionSystemNames[function];
+    }
+
+    public long getFunctionFilename(int function) {
+        return functionFilenames[function];
+    }
+
+    public long getFunctionStartLine(int function) {
+        return functionStartLines[function];
+    }
+
+    public int getMappingCount() {
+        return mappingIds.length;
+    }
+
+    public long getMappingId(int mapping) {
+        return mappingIds[mapping];
+    }
+
+    public long getMappingMemoryStart(int mapping) {
+        return mappingMemoryStarts[mapping];
+    }
+
+    public long getMappingMemoryLimit(int mapping) {
+        return mappingMemoryLimits[mapping];
+    }
+
+    public long getMappingFileOffset(int mapping) {
+        return mappingFileOffsets[mapping];
+    }
+
+    public long getMappingFilename(int mapping) {
+        return mappingFilenames[mapping];
+    }
+
+    public long getMappingBuildId(int mapping) {
+        return mappingBuildIds[mapping];
+    }
+
+    public int getMappingFlags(int mapping) {
+        return mappingFlags[mapping];
+    }
+
+    public long getDropFrames() {
+        return dropFrames;
+    }
+
+    public long getKeepFrames() {
+        return keepFrames;
+    }
+
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getPeriodTypeType() {
+        return periodTypeType;
+    }
+
+    public long getPeriodTypeUnit() {
+        return periodTypeUnit;
+    }
+
+    public long getPeriod() {
+        return period;
+    }
+
+    public long[] getComments() {
+        return comments.clone();
+    }
+
+    public long getDefaultSampleType() {
+        return defaultSampleType;
+    }
+
+    public long getDocUrl() {
+        return docUrl;
+    }
+
+    // 列式构建器，作为 ProfileDecoder 的回调逐条接收解码结果
+    public static class Builder implements ProfileVisitor {
+        private final List<String> strings = new ArrayList<>();
+        private final LongArrayList sampleTypes = new LongArrayList();
+        private StackTable stacks;
+        // 排好序的标签，按 StackTable.LABEL_FIELDS 打包，复用以免每个样本分配
+        private long[] labels = new long[16];
+
+        private final LongArrayList locationIds = new LongArrayList();
+        private final LongArrayList locationMappingIds = new LongArrayList();
+        private final LongArrayList locationAddresses = new LongArrayList();
+        private boolean[] locationFolded = new boolean[16];
+        private int[] locationLineStart = new int[17];
+        private final LongArrayList lineFunctionIds = new LongArrayList();
+        private final LongArrayList lineNumbers = new LongArrayList();
+
+        private final LongArrayList functionIds = new LongArrayList();
+        private final LongArrayList functionNames = new LongArrayList();
+        private final LongArrayList functionSystemNames = new LongArrayList();
+        private final LongArrayList functionFilenames = new LongArrayList();
+        private final LongArrayList functionStartLines = new LongArrayList();
+
+        private final LongArrayList mappingIds = new LongArrayList();
+        private final LongArrayList mappingMemoryStarts = new LongArrayList();
+        private final LongArrayList mappingMemoryLimits = new LongArrayList();
+        private final LongArrayList mappingFileOffsets = new LongArrayList();
+        private final LongArrayList mappingFilenames = new LongArrayList();
+        private final LongArrayList mappingBuildIds = new LongArrayList();
+        private int[] mappingFlags = new int[4];
+
+        private long dropFrames;
+        private long keepFrames;
+        private long timeNanos;
+        private long durationNanos;
+        private long periodTypeType;
+        private long periodTypeUnit;
+        private long period;
+        private final LongArrayList comments = new LongArrayList();
+        private long defaultSampleType;
+        private long docUrl;
+
+        @Override
+        public void visitSampleType(long type, long unit) {
+            sampleTypes.add(type);
+            sampleTypes.add(unit);
+        }
+
+        @Override
+        public void visitSample(SampleRecord record) {
+            if (stacks == null) {
+                // sample_type 通常先于 sample 出现，据此确定 value 列宽
+                stacks = new StackTable(Math.max(sampleTypes.size() / 2, record.valueCount));
+            }
+            int labelCount = sortLabels(record);
+            stacks.add(record.locationIds, record.locationCount, labels, labelCount, record.values, record.valueCount);
+        }
+
+        // 直接使用已去重的调用栈表，例如从列式缓存恢复的调用栈
+        void setStacks(StackTable stacks) {
+            this.stacks = stacks;
+        }
+
+        // 把样本的标签按 (key, str, num, num_unit) 排序写入 labels，使标签顺序不影响调用栈去重；
+        // 标签通常只有几个，插入排序即可
+        private int sortLabels(SampleRecord record) {
+            int count = record.labelCount;
+            if (count * StackTable.LABEL_FIELDS > labels.length) {
+                labels = new long[count * StackTable.LABEL_FIELDS * 2];
+            }
+            for (int i = 0; i < count; i++) {
+                long key = record.labelKeys[i];
+                long str = record.labelStrs[i];
+                long num = record.labelNums[i];
+                long unit = record.labelNumUnits[i];
+                int j = i - 1;
+                while (j >= 0 && compareLabel(j, key, str, num, unit) > 0) {
+                    System.arraycopy(labels, j * StackTable.LABEL_FIELDS, labels, (j + 1) * StackTable.LABEL_FIELDS,
+                        StackTable.LABEL_FIELDS);
+                    j--;
+                }
+                int base = (j + 1) * StackTable.LABEL_FIELDS;
+                labels[base] = key;
+                labels[base + 1] = str;
+                labels[base + 2] = num;
+                labels[base + 3] = unit;
+            }
+            return count;
+        }
+
+        private int compareLabel(int index, long key, long str, long num, long unit) {
+            int base = index * StackTable.LABEL_FIELDS;
+            if (labels[base] != key) {
+                return Long.compare(labels[base], key);
+            }
+            if (labels[base + 1] != str) {
+                return Long.compare(labels[base + 1], str);
+            }
+            if (labels[base + 2] != num) {
+                return Long.compare(labels[base + 2], num);
+            }
+            return Long.compare(labels[base + 3], unit);
+        }
+
+        @Override
+        public void visitMapping(long id, long memoryStart, long memoryLimit, long fileOffset,
+                                 long filename, long buildId, int flags) {
+            int index = mappingIds.size();
+            if (index == mappingFlags.length) {
+                mappingFlags = Arrays.copyOf(mappingFlags, index * 2);
+            }
+            mappingIds.add(id);
+            mappingMemoryStarts.add(memoryStart);
+            mappingMemoryLimits.add(memoryLimit);
+            mappingFileOffsets.add(fileOffset);
+            mappingFilenames.add(filename);
+            mappingBuildIds.add(buildId);
+            mappingFlags[index] = flags;
+        }
+
+        @Override
+        public void visitLocation(LocationRecord record) {
+            int index = locationIds.size();
+            if (index + 1 >= locationLineStart.length) {
+                locationLineStart = Arrays.copyOf(locationLineStart, locationLineStart.length * 2);
+                locationFolded = Arrays.copyOf(locationFolded, locationLineStart.length);
+            }
+            locationIds.add(record.id);
+            locationMappingIds.add(record.mappingId);
+            locationAddresses.add(record.address);
+            locationFolded[index] = record.isFolded;
+            for (int i = 0; i < record.lineCount; i++) {
+                lineFunctionIds.add(record.lineFunctionIds[i]);
+                lineNumbers.add(record.lineNumbers[i]);
+            }
+            locationLineStart[index + 1] = lineFunctionIds.size();
+        }
+
+        @Override
+        public void visitFunction(long id, long name, long systemName, long filename, long startLine) {
+            functionIds.add(id);
+            functionNames.add(name);
+            functionSystemNames.add(systemName);
+            functionFilenames.add(filename);
+            functionStartLines.add(startLine);
+        }
+
+        @Override
+        public void visitString(int index, String value) {
+            strings.add(value);
+        }
+
+        @Override
+        public void visitPeriodType(long type, long unit) {
+            periodTypeType = type;
+            periodTypeUnit = unit;
+        }
+
+        @Override
+        public void visitComment(long stringIndex) {
+            comments.add(stringIndex);
+        }
+
+        @Override
+        public void visitHeader(int fieldNumber, long value) {
+            switch (fieldNumber) {
+                case ProfileDecoder.FIELD_DROP_FRAMES: dropFrames = value; break;
+                case ProfileDecoder.FIELD_KEEP_FRAMES: keepFrames = value; break;
+                case ProfileDecoder.FIELD_TIME_NANOS: timeNanos = value; break;
+                case ProfileDecoder.FIELD_DURATION_NANOS: durationNanos = value; break;
+                case ProfileDecoder.FIELD_PERIOD: period = value; break;
+                case ProfileDecoder.FIELD_DEFAULT_SAMPLE_TYPE: defaultSampleType = value; break;
+                case ProfileDecoder.FIELD_DOC_URL: docUrl = value; break;
+                default: break;
+            }
+        }
+
+        public ProfileData build() {
+            if (stacks == null) {
+                stacks = new StackTable(sampleTypes.size() / 2);
+            }
+            return new ProfileData(this);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.example;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// 基于 CodedInputStream 的流式 pprof 解码器
+// 逐个读取 Profile 的顶层字段并回调 ProfileVisitor，不构建 Sample/Location/Function 对象图，
+// 因此内存占用只取决于访问者保留了多少数据，而不是文件大小
+public class ProfileDecoder {
+    // Profile 顶层字段号，与 profile.proto 保持一致
+    public static final int FIELD_SAMPLE_TYPE = 1;
+    public static final int FIELD_SAMPLE = 2;
+    public static final int FIELD_MAPPING = 3;
+    public static final int FIELD_LOCATION = 4;
+    public static final int FIELD_FUNCTION = 5;
+    public static final int FIELD_STRING_TABLE = 6;
+    public static final int FIELD_DROP_FRAMES = 7;
+    public static final int FIELD_KEEP_FRAMES = 8;
+    public static final int FIELD_TIME_NANOS = 9;
+    public static final int FIELD_DURATION_NANOS = 10;
+    public static final int FIELD_PERIOD_TYPE = 11;
+    public static final int FIELD_PERIOD = 12;
+    public static final int FIELD_COMMENT = 13;
+    public static final int FIELD_DEFAULT_SAMPLE_TYPE = 14;
+    public static final int FIELD_DOC_URL = 15;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ProfileVisitor visitor;
+    private final ProfileVisitor.SampleRecord sampleRecord = new ProfileVisitor.SampleRecord();
+    private final ProfileVisitor.LocationRecord locationRecord = new ProfileVisitor.LocationRecord();
+    private int stringIndex;
+
+    public ProfileDecoder(ProfileVisitor visitor) {
+        this.visitor = visitor;
+    }
+
+    // 解码未压缩的 protobuf 字节流
+    public void decode(InputStream inputStream) throws IOException {
+        decode(CodedInputStream.newInstance(inputStream, BUFFER_SIZE));
+    }
+
+    public void decode(CodedInputStream input) throws IOException {
+        // 大文件可能超过默认的 2GB 计数上限，每个顶层字段后重置计数
+        input.setSizeLimit(Integer.MAX_VALUE);
+        stringIndex = 0;
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case FIELD_SAMPLE_TYPE: {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    long[] valueType = readValueType(input);
+                    input.popLimit(limit);
+                    visitor.visitSampleType(valueType[0], valueType[1]);
+                    break;
+                }
+                case FIELD_SAMPLE:
+                    readSample(input);
+                    visitor.visitSample(sampleRecord);
+                    break;
+                case FIELD_MAPPING:
+                    readMapping(input);
+                    break;
+                case FIELD_LOCATION:
+                    readLocation(input);
+                    visitor.visitLocation(locationRecord);
+                    break;
+                case FIELD_FUNCTION:
+                    readFunction(input);
+                    break;
+                case FIELD_STRING_TABLE:
+                    visitor.visitString(stringIndex++, input.readStringRequireUtf8());
+                    break;
+                case FIELD_PERIOD_TYPE: {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    long[] valueType = readValueType(input);
+                    input.popLimit(limit);
+                    visitor.visitPeriodType(valueType[0], valueType[1]);
+                    break;
+                }
+                case FIELD_COMMENT:
+                    if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                        int limit = input.pushLimit(input.readRawVarint32());
+                        while (input.getBytesUntilLimit() > 0) {
+                            visitor.visitComment(input.readInt64());
+                        }
+                        input.popLimit(limit);
+                    } else {
+                        visitor.visitComment(input.readInt64());
+                    }
+                    break;
+                case FIELD_DROP_FRAMES:
+                case FIELD_KEEP_FRAMES:
+                case FIELD_TIME_NANOS:
+                case FIELD_DURATION_NANOS:
+                case FIELD_PERIOD:
+                case FIELD_DEFAULT_SAMPLE_TYPE:
+                case FIELD_DOC_URL:
+                    visitor.visitHeader(WireFormat.getTagFieldNumber(tag), input.readInt64());
+                    break;
+                default:
+                    input.skipField(tag);
+                    break;
+            }
+            input.resetSizeCounter();
+        }
+        visitor.visitEnd();
+    }
+
+    private long[] readValueType(CodedInputStream input) throws IOException {
+        long type = 0;
+        long unit = 0;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: type = input.readInt64(); break;
+                case 2: unit = input.readInt64(); break;
+                default: input.skipField(tag); break;
+            }
+        }
+        return new long[] { type, unit };
+    }
+
+    private void readSample(CodedInputStream input) throws IOException {
+        ProfileVisitor.SampleRecord record = sampleRecord;
+        record.clear();
+        int limit = input.pushLimit(input.readRawVarint32());
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            int field = WireFormat.getTagFieldNumber(tag);
+            boolean packed = WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+            if (field == 1) {
+                // location_id：proto3 默认 packed 编码，但也兼容逐个编码
+                if (packed) {
+                    int packedLimit = input.pushLimit(input.readRawVarint32());
+                    while (input.getBytesUntilLimit() > 0) {
+                        record.addLocationId(input.readUInt64());
+                    }
+                    input.popLimit(packedLimit);
+                } else {
+                    record.addLocationId(input.readUInt64());
+                }
+            } else if (field == 2) {
+                if (packed) {
+                    int packedLimit = input.pushLimit(input.readRawVarint32());
+                    while (input.getBytesUntilLimit() > 0) {
+                        record.addValue(input.readInt64());
+                    }
+                    input.popLimit(packedLimit);
+                } else {
+                    record.addValue(input.readInt64());
+                }
+            } else if (field == 3) {
+                readLabel(input, record);
+            } else {
+                input.skipField(tag);
+            }
+        }
+        input.popLimit(limit);
+    }
+
+    private void readLabel(CodedInputStream input, ProfileVisitor.SampleRecord record) throws IOException {
+        long key = 0;
+        long str = 0;
+        long num = 0;
+        long numUnit = 0;
+        int limit = input.pushLimit(input.readRawVarint32());
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: key = input.readInt64(); break;
+                case 2: str = input.readInt64(); break;
+                case 3: num = input.readInt64(); break;
+                case 4: numUnit = input.readInt64(); break;
+                default: input.skipField(tag); break;
+            }
+        }
+        input.popLimit(limit);
+        record.addLabel(key, str, num, numUnit);
+    }
+
+    private void readMapping(CodedInputStream input) throws IOException {
+        long id = 0;
+        long memoryStart = 0;
+        long memoryLimit = 0;
+        long fileOffset = 0;
+        long filename = 0;
+        long buildId = 0;
+        int flags = 0;
+        int limit = input.pushLimit(input.readRawVarint32());
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: id = input.readUInt64(); break;
+                case 2: memoryStart = input.readUInt64(); break;
+                case 3: memoryLimit = input.readUInt64(); break;
+                case 4: fileOffset = input.readUInt64(); break;
+                case 5: filename = input.readInt64(); break;
+                case 6: buildId = input.readInt64(); break;
+                case 7: if (input.readBool()) flags |= ProfileVisitor.HAS_FUNCTIONS; break;
+                case 8: if (input.readBool()) flags |= ProfileVisitor.HAS_FILENAMES; break;
+                case 9: if (input.readBool()) flags |= ProfileVisitor.HAS_LINE_NUMBERS; break;
+                case 10: if (input.readBool()) flags |= ProfileVisitor.HAS_INLINE_FRAMES; break;
+                default: input.skipField(tag); break;
+            }
+        }
+        input.popLimit(limit);
+        visitor.visitMapping(id, memoryStart, memoryLimit, fileOffset, filename, buildId, flags);
+    }
+
+    private void readLocation(CodedInputStream input) throws IOException {
+        ProfileVisitor.LocationRecord record = locationRecord;
+        record.clear();
+        int limit = input.pushLimit(input.readRawVarint32());
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: record.id = input.readUInt64(); break;
+                case 2: record.mappingId = input.readUInt64(); break;
+                case 3: record.address = input.readUInt64(); break;
+                case 4: readLine(input, record); break;
+                case 5: record.isFolded = input.readBool(); break;
+                default: input.skipField(tag); break;
+            }
+        }
+        input.popLimit(limit);
+    }
+
+    private void readLine(CodedInputStream input, ProfileVisitor.LocationRecord record) throws IOException {
+        long functionId = 0;
+        long line = 0;
+        int limit = input.pushLimit(input.readRawVarint32());
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: functionId = input.readUInt64(); break;
+                case 2: line = input.readInt64(); break;
+                default: input.skipField(tag); break;
+            }
+        }
+        input.popLimit(limit);
+        record.addLine(functionId, line);
+    }
+
+    private void readFunction(CodedInputStream input) throws IOException {
+        long id = 0;
+        long name = 0;
+        long systemName = 0;
+        long filename = 0;
+        long startLine = 0;
+        int limit = input.pushLimit(input.readRawVarint32());
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: id = input.readUInt64(); break;
+                case 2: name = input.readInt64(); break;
+                case 3: systemName = input.readInt64(); break;
+                case 4: filename = input.readInt64(); break;
+                case 5: startLine = input.readInt64(); break;
+                default: input.skipField(tag); break;
+            }
+        }
+        input.popLimit(limit);
+        visitor.visitFunction(id, name, systemName, filename, startLine);
+    }
+}
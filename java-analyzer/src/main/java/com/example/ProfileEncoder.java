@@ -0,0 +1,218 @@
+package com.example;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+// ProfileData 的流式 protobuf 编码器，与 ProfileDecoder 对应
+// 逐个调用栈直接写出 Sample，不构建 Profile 对象；值为 0 的 proto3 标量字段按规范省略
+public class ProfileEncoder {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ProfileData profile;
+
+    public ProfileEncoder(ProfileData profile) {
+        this.profile = profile;
+    }
+
+    // 写出 gzip 压缩的 pprof 文件，与 go tool pprof 的输出格式一致
+    public void writeGzip(Path path) throws IOException {
+        try (OutputStream fileOutput = Files.newOutputStream(path);
+             OutputStream gzipOutput = new GZIPOutputStream(new BufferedOutputStream(fileOutput, BUFFER_SIZE), BUFFER_SIZE)) {
+            write(gzipOutput);
+        }
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        CodedOutputStream output = CodedOutputStream.newInstance(outputStream, BUFFER_SIZE);
+
+        for (int i = 0; i < profile.getSampleTypeCount(); i++) {
+            writeValueType(output, ProfileDecoder.FIELD_SAMPLE_TYPE,
+                profile.getSampleTypeType(i), profile.getSampleTypeUnit(i));
+        }
+        writeSamples(output);
+        for (int i = 0; i < profile.getMappingCount(); i++) {
+            writeMapping(output, i);
+        }
+        for (int i = 0; i < profile.getLocationCount(); i++) {
+            writeLocation(output, i);
+        }
+        for (int i = 0; i < profile.getFunctionCount(); i++) {
+            writeFunction(output, i);
+        }
+        for (int i = 0; i < profile.getStringCount(); i++) {
+            output.writeString(ProfileDecoder.FIELD_STRING_TABLE, profile.getString(i));
+        }
+        writeInt64(output, ProfileDecoder.FIELD_DROP_FRAMES, profile.getDropFrames());
+        writeInt64(output, ProfileDecoder.FIELD_KEEP_FRAMES, profile.getKeepFrames());
+        writeInt64(output, ProfileDecoder.FIELD_TIME_NANOS, profile.getTimeNanos());
+        writeInt64(output, ProfileDecoder.FIELD_DURATION_NANOS, profile.getDurationNanos());
+        writeValueType(output, ProfileDecoder.FIELD_PERIOD_TYPE, profile.getPeriodTypeType(), profile.getPeriodTypeUnit());
+        writeInt64(output, ProfileDecoder.FIELD_PERIOD, profile.getPeriod());
+        long[] comments = profile.getComments();
+        if (comments.length > 0) {
+            int size = 0;
+            for (long comment : comments) {
+                size += CodedOutputStream.computeInt64SizeNoTag(comment);
+            }
+            output.writeTag(ProfileDecoder.FIELD_COMMENT, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(size);
+            for (long comment : comments) {
+                output.writeInt64NoTag(comment);
+            }
+        }
+        writeInt64(output, ProfileDecoder.FIELD_DEFAULT_SAMPLE_TYPE, profile.getDefaultSampleType());
+        writeInt64(output, ProfileDecoder.FIELD_DOC_URL, profile.getDocUrl());
+        output.flush();
+    }
+
+    private void writeSamples(CodedOutputStream output) throws IOException {
+        StackTable stacks = profile.getStacks();
+        int valueCount = Math.max(profile.getSampleTypeCount(), 1);
+        for (int stack = 0; stack < stacks.size(); stack++) {
+            int depth = stacks.getDepth(stack);
+            int locationBytes = 0;
+            for (int i = 0; i < depth; i++) {
+                locationBytes += CodedOutputStream.computeUInt64SizeNoTag(stacks.getLocationId(stack, i));
+            }
+            int valueBytes = 0;
+            for (int v = 0; v < valueCount; v++) {
+                valueBytes += CodedOutputStream.computeInt64SizeNoTag(stacks.getValue(stack, v));
+            }
+            int size = packedSize(1, locationBytes) + packedSize(2, valueBytes);
+            int labelCount = stacks.getLabelCount(stack);
+            for (int i = 0; i < labelCount; i++) {
+                int labelBytes = labelSize(stacks, stack, i);
+                size += CodedOutputStream.computeTagSize(3) + CodedOutputStream.computeUInt32SizeNoTag(labelBytes)
+                    + labelBytes;
+            }
+
+            output.writeTag(ProfileDecoder.FIELD_SAMPLE, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(size);
+            if (locationBytes > 0) {
+                output.writeTag(1, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(locationBytes);
+                for (int i = 0; i < depth; i++) {
+                    output.writeUInt64NoTag(stacks.getLocationId(stack, i));
+                }
+            }
+            output.writeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(valueBytes);
+            for (int v = 0; v < valueCount; v++) {
+                output.writeInt64NoTag(stacks.getValue(stack, v));
+            }
+            for (int i = 0; i < labelCount; i++) {
+                output.writeTag(3, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(labelSize(stacks, stack, i));
+                writeVarintField(output, 1, stacks.getLabelKey(stack, i));
+                writeVarintField(output, 2, stacks.getLabelStr(stack, i));
+                writeVarintField(output, 3, stacks.getLabelNum(stack, i));
+                writeVarintField(output, 4, stacks.getLabelNumUnit(stack, i));
+            }
+        }
+    }
+
+    // Label 消息：key=1、str=2、num=3、num_unit=4
+    private static int labelSize(StackTable stacks, int stack, int label) {
+        return varintFieldSize(1, stacks.getLabelKey(stack, label)) + varintFieldSize(2, stacks.getLabelStr(stack, label))
+            + varintFieldSize(3, stacks.getLabelNum(stack, label))
+            + varintFieldSize(4, stacks.getLabelNumUnit(stack, label));
+    }
+
+    private void writeMapping(CodedOutputStream output, int mapping) throws IOException {
+        int flags = profile.getMappingFlags(mapping);
+        long[] fields = {
+            profile.getMappingId(mapping), profile.getMappingMemoryStart(mapping), profile.getMappingMemoryLimit(mapping),
+            profile.getMappingFileOffset(mapping), profile.getMappingFilename(mapping), profile.getMappingBuildId(mapping),
+            flags & ProfileVisitor.HAS_FUNCTIONS, flags & ProfileVisitor.HAS_FILENAMES,
+            flags & ProfileVisitor.HAS_LINE_NUMBERS, flags & ProfileVisitor.HAS_INLINE_FRAMES
+        };
+        int size = 0;
+        for (int i = 0; i < fields.length; i++) {
+            size += varintFieldSize(i + 1, fields[i] != 0 && i >= 6 ? 1 : fields[i]);
+        }
+        output.writeTag(ProfileDecoder.FIELD_MAPPING, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(size);
+        for (int i = 0; i < fields.length; i++) {
+            writeVarintField(output, i + 1, fields[i] != 0 && i >= 6 ? 1 : fields[i]);
+        }
+    }
+
+    private void writeLocation(CodedOutputStream output, int location) throws IOException {
+        int lineCount = profile.getLocationLineCount(location);
+        int size = varintFieldSize(1, profile.getLocationId(location))
+            + varintFieldSize(2, profile.getLocationMappingId(location))
+            + varintFieldSize(3, profile.getLocationAddress(location))
+            + varintFieldSize(5, profile.isLocationFolded(location) ? 1 : 0);
+        for (int line = 0; line < lineCount; line++) {
+            int lineSize = lineSize(location, line);
+            size += 1 + CodedOutputStream.computeUInt32SizeNoTag(lineSize) + lineSize;
+        }
+        output.writeTag(ProfileDecoder.FIELD_LOCATION, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(size);
+        writeVarintField(output, 1, profile.getLocationId(location));
+        writeVarintField(output, 2, profile.getLocationMappingId(location));
+        writeVarintField(output, 3, profile.getLocationAddress(location));
+        for (int line = 0; line < lineCount; line++) {
+            output.writeTag(4, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(lineSize(location, line));
+            writeVarintField(output, 1, profile.getLocationLineFunctionId(location, line));
+            writeVarintField(output, 2, profile.getLocationLineNumber(location, line));
+        }
+        writeVarintField(output, 5, profile.isLocationFolded(location) ? 1 : 0);
+    }
+
+    private int lineSize(int location, int line) {
+        return varintFieldSize(1, profile.getLocationLineFunctionId(location, line))
+            + varintFieldSize(2, profile.getLocationLineNumber(location, line));
+    }
+
+    private void writeFunction(CodedOutputStream output, int function) throws IOException {
+        long[] fields = {
+            profile.getFunctionId(function), profile.getFunctionName(function), profile.getFunctionSystemName(function),
+            profile.getFunctionFilename(function), profile.getFunctionStartLine(function)
+        };
+        int size = 0;
+        for (int i = 0; i < fields.length; i++) {
+            size += varintFieldSize(i + 1, fields[i]);
+        }
+        output.writeTag(ProfileDecoder.FIELD_FUNCTION, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(size);
+        for (int i = 0; i < fields.length; i++) {
+            writeVarintField(output, i + 1, fields[i]);
+        }
+    }
+
+    private static void writeValueType(CodedOutputStream output, int field, long type, long unit) throws IOException {
+        output.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(varintFieldSize(1, type) + varintFieldSize(2, unit));
+        writeVarintField(output, 1, type);
+        writeVarintField(output, 2, unit);
+    }
+
+    private static void writeInt64(CodedOutputStream output, int field, long value) throws IOException {
+        writeVarintField(output, field, value);
+    }
+
+    // 所有整数字段（int64、uint64、bool）都是 varint 编码，0 值省略
+    private static void writeVarintField(CodedOutputStream output, int field, long value) throws IOException {
+        if (value != 0) {
+            output.writeUInt64(field, value);
+        }
+    }
+
+    private static int varintFieldSize(int field, long value) {
+        return value == 0 ? 0 : CodedOutputStream.computeUInt64Size(field, value);
+    }
+
+    private static int packedSize(int field, int dataBytes) {
+        return dataBytes == 0 ? 0
+            : CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(dataBytes) + dataBytes;
+    }
+}
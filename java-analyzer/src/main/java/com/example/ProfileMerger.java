@@ -0,0 +1,310 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+
+// 将多个 profile 合并为一个
+// 各输入的字符串表、Mapping、Function、Location 重新映射到统一的符号空间，相同调用栈的样本值逐列相加。
+// 合并按 fork-join 归约进行：叶子任务解码单个文件，上层任务两两合并，并行度由线程数决定
+public class ProfileMerger {
+    private final int parallelism;
+
+    public ProfileMerger(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public ProfileData merge(List<Path> inputs) throws IOException {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("没有可合并的 profile");
+        }
+        try {
+            return ProfileAggregator.sharedPool(parallelism).invoke(new MergeTask(inputs, 0, inputs.size(),
+                ProfileReader.threadsPerRead(parallelism)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // 合并两个已解码的 profile，结果的 id 从 1 开始连续分配
+    public static ProfileData merge(ProfileData left, ProfileData right) {
+        Unifier unifier = new Unifier();
+        unifier.add(left);
+        unifier.add(right);
+        return unifier.build();
+    }
+
+    // 把 profile 并入已有的符号空间 base（不含调用栈、由本类合并得到）：base 的字符串下标和各类 id 保持不变，
+    // 新符号追加在后面，结果中的调用栈全部来自 profile；base 为 null 时只对 profile 自身去重并重新编号
+    static ProfileData extend(ProfileData base, ProfileData profile) {
+        Unifier unifier = new Unifier();
+        if (base != null) {
+            unifier.add(base);
+        }
+        unifier.add(profile);
+        return unifier.build();
+    }
+
+    private static class MergeTask extends RecursiveTask<ProfileData> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> inputs;
+        private final int from;
+        private final int to;
+        // 同时读取 parallelism 个输入，每个读取分到的解压线程数
+        private final int readThreads;
+
+        MergeTask(List<Path> inputs, int from, int to, int readThreads) {
+            this.inputs = inputs;
+            this.from = from;
+            this.to = to;
+            this.readThreads = readThreads;
+        }
+
+        @Override
+        protected ProfileData compute() {
+            if (to - from == 1) {
+                Path input = inputs.get(from);
+                try {
+                    return ProfileReader.read(input, readThreads);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(new IOException("读取 " + input + " 失败: " + e.getMessage(), e));
+                }
+            }
+            int middle = (from + to) >>> 1;
+            MergeTask left = new MergeTask(inputs, from, middle, readThreads);
+            left.fork();
+            ProfileData right = new MergeTask(inputs, middle, to, readThreads).compute();
+            return merge(left.join(), right);
+        }
+    }
+
+    // 把若干 profile 依次写入同一个 ProfileData.Builder，并负责符号去重和 id 重映射
+    private static class Unifier {
+        private final ProfileData.Builder builder = new ProfileData.Builder();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<SymbolKey, Integer> mappings = new HashMap<>();
+        private final Map<SymbolKey, Integer> functions = new HashMap<>();
+        private final Map<SymbolKey, Integer> locations = new HashMap<>();
+        private final LongArrayList mappingStarts = new LongArrayList();
+        private final Set<Long> comments = new LinkedHashSet<>();
+        private final ProfileVisitor.SampleRecord sample = new ProfileVisitor.SampleRecord();
+
+        private List<String> sampleTypeNames;
+        private long dropFrames;
+        private long keepFrames;
+        private long timeNanos;
+        private long durationNanos;
+        private long periodTypeType;
+        private long periodTypeUnit;
+        private long period;
+        private long defaultSampleType;
+        private long docUrl;
+
+        Unifier() {
+            intern("");
+        }
+
+        void add(ProfileData profile) {
+            long[] stringMap = new long[profile.getStringCount()];
+            for (int i = 0; i < stringMap.length; i++) {
+                stringMap[i] = intern(profile.getString(i));
+            }
+            addHeader(profile, stringMap);
+
+            // Mapping 按（大小、文件偏移、build id 或文件名）去重，不同进程的加载地址可以不同
+            LongIntHashMap mappingMap = new LongIntHashMap(profile.getMappingCount());
+            int[] mappingIds = new int[profile.getMappingCount()];
+            long[] mappingDelta = new long[profile.getMappingCount()];
+            for (int i = 0; i < profile.getMappingCount(); i++) {
+                long start = profile.getMappingMemoryStart(i);
+                long buildId = remap(stringMap, profile.getMappingBuildId(i));
+                long filename = remap(stringMap, profile.getMappingFilename(i));
+                SymbolKey key = new SymbolKey(profile.getMappingMemoryLimit(i) - start, profile.getMappingFileOffset(i),
+                    buildId != 0 ? buildId : filename, buildId != 0 ? 1 : 0);
+                Integer id = mappings.get(key);
+                if (id == null) {
+                    id = mappings.size() + 1;
+                    mappings.put(key, id);
+                    mappingStarts.add(start);
+                    builder.visitMapping(id, start, profile.getMappingMemoryLimit(i), profile.getMappingFileOffset(i),
+                        filename, buildId, profile.getMappingFlags(i));
+                }
+                mappingMap.put(profile.getMappingId(i), i);
+                mappingIds[i] = id;
+                // 地址按合并后 Mapping 的加载地址重新定位
+                mappingDelta[i] = mappingStarts.get(id - 1) - start;
+            }
+
+            LongIntHashMap functionMap = new LongIntHashMap(profile.getFunctionCount());
+            for (int i = 0; i < profile.getFunctionCount(); i++) {
+                long name = remap(stringMap, profile.getFunctionName(i));
+                long systemName = remap(stringMap, profile.getFunctionSystemName(i));
+                long filename = remap(stringMap, profile.getFunctionFilename(i));
+                long startLine = profile.getFunctionStartLine(i);
+                SymbolKey key = new SymbolKey(name, systemName, filename, startLine);
+                Integer id = functions.get(key);
+                if (id == null) {
+                    id = functions.size() + 1;
+                    functions.put(key, id);
+                    builder.visitFunction(id, name, systemName, filename, startLine);
+                }
+                functionMap.put(profile.getFunctionId(i), id);
+            }
+
+            // Location 按（Mapping、重定位后的地址、折叠标记、各行的函数和行号）去重
+            LongIntHashMap locationMap = new LongIntHashMap(profile.getLocationCount());
+            ProfileVisitor.LocationRecord record = new ProfileVisitor.LocationRecord();
+            for (int i = 0; i < profile.getLocationCount(); i++) {
+                int lineCount = profile.getLocationLineCount(i);
+                long[] fields = new long[3 + lineCount * 2];
+                int mapping = mappingMap.get(profile.getLocationMappingId(i), -1);
+                long address = profile.getLocationAddress(i);
+                if (mapping >= 0) {
+                    fields[0] = mappingIds[mapping];
+                    address += mappingDelta[mapping];
+                }
+                fields[1] = address;
+                fields[2] = profile.isLocationFolded(i) ? 1 : 0;
+                for (int line = 0; line < lineCount; line++) {
+                    fields[3 + line * 2] = functionMap.get(profile.getLocationLineFunctionId(i, line), 0);
+                    fields[4 + line * 2] = profile.getLocationLineNumber(i, line);
+                }
+                SymbolKey key = new SymbolKey(fields);
+                Integer id = locations.get(key);
+                if (id == null) {
+                    id = locations.size() + 1;
+                    locations.put(key, id);
+                    record.clear();
+                    record.id = id;
+                    record.mappingId = fields[0];
+                    record.address = address;
+                    record.isFolded = fields[2] != 0;
+                    for (int line = 0; line < lineCount; line++) {
+                        record.addLine(fields[3 + line * 2], fields[4 + line * 2]);
+                    }
+                    builder.visitLocation(record);
+                }
+                locationMap.put(profile.getLocationId(i), id);
+            }
+
+            // 调用栈换成新的 location id、标签换成新的字符串下标后写入，相同调用栈和标签的值在 StackTable 中累加
+            StackTable stacks = profile.getStacks();
+            int valueCount = stacks.getValueWidth();
+            if (sample.values.length < valueCount) {
+                sample.values = new long[valueCount];
+            }
+            for (int stack = 0; stack < stacks.size(); stack++) {
+                sample.clear();
+                int depth = stacks.getDepth(stack);
+                for (int i = 0; i < depth; i++) {
+                    int id = locationMap.get(stacks.getLocationId(stack, i), 0);
+                    if (id != 0) {
+                        sample.addLocationId(id);
+                    }
+                }
+                for (int v = 0; v < valueCount; v++) {
+                    sample.values[v] = stacks.getValue(stack, v);
+                }
+                sample.valueCount = valueCount;
+                for (int i = 0; i < stacks.getLabelCount(stack); i++) {
+                    sample.addLabel(remap(stringMap, stacks.getLabelKey(stack, i)),
+                        remap(stringMap, stacks.getLabelStr(stack, i)), stacks.getLabelNum(stack, i),
+                        remap(stringMap, stacks.getLabelNumUnit(stack, i)));
+                }
+                builder.visitSample(sample);
+            }
+        }
+
+        // 第一个 profile 决定 sample_type、period 等头部字段，其余 profile 的 sample_type 必须与之一致
+        private void addHeader(ProfileData profile, long[] stringMap) {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < profile.getSampleTypeCount(); i++) {
+                names.add(profile.getString(profile.getSampleTypeType(i)) + "/"
+                    + profile.getString(profile.getSampleTypeUnit(i)));
+            }
+            if (sampleTypeNames == null) {
+                sampleTypeNames = names;
+                for (int i = 0; i < profile.getSampleTypeCount(); i++) {
+                    builder.visitSampleType(remap(stringMap, profile.getSampleTypeType(i)),
+                        remap(stringMap, profile.getSampleTypeUnit(i)));
+                }
+                dropFrames = remap(stringMap, profile.getDropFrames());
+                keepFrames = remap(stringMap, profile.getKeepFrames());
+                periodTypeType = remap(stringMap, profile.getPeriodTypeType());
+                periodTypeUnit = remap(stringMap, profile.getPeriodTypeUnit());
+                period = profile.getPeriod();
+                defaultSampleType = remap(stringMap, profile.getDefaultSampleType());
+                docUrl = remap(stringMap, profile.getDocUrl());
+            } else if (!sampleTypeNames.equals(names)) {
+                throw new IllegalArgumentException("sample_type 不一致，无法合并: " + sampleTypeNames + " 与 " + names);
+            }
+            // 采集起始时间取最早的一个，持续时间累加
+            if (profile.getTimeNanos() != 0 && (timeNanos == 0 || profile.getTimeNanos() < timeNanos)) {
+                timeNanos = profile.getTimeNanos();
+            }
+            durationNanos += profile.getDurationNanos();
+            for (long comment : profile.getComments()) {
+                comments.add(remap(stringMap, comment));
+            }
+        }
+
+        ProfileData build() {
+            builder.visitPeriodType(periodTypeType, periodTypeUnit);
+            for (long comment : comments) {
+                builder.visitComment(comment);
+            }
+            builder.visitHeader(ProfileDecoder.FIELD_DROP_FRAMES, dropFrames);
+            builder.visitHeader(ProfileDecoder.FIELD_KEEP_FRAMES, keepFrames);
+            builder.visitHeader(ProfileDecoder.FIELD_TIME_NANOS, timeNanos);
+            builder.visitHeader(ProfileDecoder.FIELD_DURATION_NANOS, durationNanos);
+            builder.visitHeader(ProfileDecoder.FIELD_PERIOD, period);
+            builder.visitHeader(ProfileDecoder.FIELD_DEFAULT_SAMPLE_TYPE, defaultSampleType);
+            builder.visitHeader(ProfileDecoder.FIELD_DOC_URL, docUrl);
+            return builder.build();
+        }
+
+        private int intern(String value) {
+            Integer index = strings.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.put(value, index);
+                builder.visitString(index, value);
+            }
+            return index;
+        }
+
+        private static long remap(long[] stringMap, long index) {
+            return index > 0 && index < stringMap.length ? stringMap[(int) index] : 0;
+        }
+    }
+
+    // 符号去重用的复合键
+    private static final class SymbolKey {
+        private final long[] fields;
+        private final int hash;
+
+        SymbolKey(long... fields) {
+            this.fields = fields;
+            this.hash = Arrays.hashCode(fields);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SymbolKey && Arrays.equals(fields, ((SymbolKey) other).fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
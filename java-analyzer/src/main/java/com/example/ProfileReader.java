@@ -0,0 +1,72 @@
+package com.example;
+
+import com.google.protobuf.CodedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+// 按文件头识别格式的 profile 读取器
+// 以 gzip 魔数 1f 8b 开头的文件经 GzipPipelineInputStream 在后台线程解压、边解压边解码；否则视为未压缩的 protobuf，
+// 通过 FileChannel.map 映射进内存直接交给 CodedInputStream，字节不经过 Java 堆
+public class ProfileReader {
+    private static final int GZIP_BUFFER_SIZE = 1 << 20;
+    private static final int DECODE_BUFFER_SIZE = 1 << 16;
+
+    public static ProfileData read(Path path) throws IOException {
+        return read(path, Runtime.getRuntime().availableProcessors());
+    }
+
+    // 同时读取 concurrentReads 个 profile 时每个读取分到的解压线程数，合计不超过 CPU 核数；
+    // 分到 1 个时退回单线程的 GZIPInputStream，不占用共享的解压线程池和 direct buffer
+    public static int threadsPerRead(int concurrentReads) {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, concurrentReads));
+    }
+
+    // threads 为解压可用的线程数，也是多 member gzip 文件同时解压的 member 数上限
+    public static ProfileData read(Path path, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return isGzip(channel) ? readGzip(channel, threads) : readUncompressed(channel);
+        }
+    }
+
+    static boolean isGzip(FileChannel channel) throws IOException {
+        // 按绝对位置读取，不改变通道的当前位置
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) <= 0) {
+                break;
+            }
+        }
+        return magic.position() == 2 && (magic.get(0) & 0xFF) == 0x1F && (magic.get(1) & 0xFF) == 0x8B;
+    }
+
+    // 解压在独立线程中进行，调用线程同时解码并按调用栈合并样本；
+    // 单核时流水线没有收益，超过 2GB 的压缩文件无法整体映射，这两种情况退回单线程的 GZIPInputStream
+    private static ProfileData readGzip(FileChannel channel, int threads) throws IOException {
+        long size = channel.size();
+        if (threads < 2 || size > Integer.MAX_VALUE) {
+            InputStream gzipInputStream = new GZIPInputStream(Channels.newInputStream(channel), GZIP_BUFFER_SIZE);
+            return ProfileData.read(CodedInputStream.newInstance(gzipInputStream, GZIP_BUFFER_SIZE));
+        }
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        try (GzipPipelineInputStream pipeline = new GzipPipelineInputStream(mapped, threads)) {
+            return ProfileData.read(CodedInputStream.newInstance(pipeline, DECODE_BUFFER_SIZE));
+        }
+    }
+
+    private static ProfileData readUncompressed(FileChannel channel) throws IOException {
+        long size = channel.size();
+        // 单个 MappedByteBuffer 最大 2GB，更大的文件退回按块流式读取
+        if (size > Integer.MAX_VALUE) {
+            return ProfileData.read(CodedInputStream.newInstance(Channels.newInputStream(channel), GZIP_BUFFER_SIZE));
+        }
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return ProfileData.read(CodedInputStream.newInstance(mapped));
+    }
+}
@@ -0,0 +1,377 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// 内嵌 HTTP 服务：按需为上传或已保存的 profile 生成火焰图、调用图和 top-N
+//   GET  /                       用法说明和服务目录下的 profile 列表
+//   POST /profiles               上传 pprof（gzip 压缩或未压缩），返回内容哈希作为 id；预计内存占用超出预算的返回 413
+//   GET  /flamegraph|/callgraph|/top
+//        profile=<服务目录下的相对路径> | id=<上传返回的 id> | last=1h、from=...&to=...（需指定 --store）
+//        sample_index=<下标或名称>、minwidth=<像素>、n=<top-N 行数> 可选
+// 解析后的 profile 按内容哈希保存在 LRU 缓存中，总量按文件大小估算，超出内存预算时淘汰最久未使用的；
+// 客户端支持时响应以 gzip 编码流式写出；请求在 JDK 21 上由虚拟线程处理，否则使用固定线程池。
+// 默认只监听本机回环地址，需要对外提供服务时以 --serve-bind 指定
+public class ProfileServer {
+    private static final Logger logger = Logger.getLogger(ProfileServer.class.getName());
+    private static final String UPLOAD_DIR = "uploads";
+
+    private final AnalyzerOptions options;
+    private final ProfileStore store;
+    private final Path root;
+    private final ProfileLru profiles;
+    // 按 --threads 个请求同时解析 profile 分配的解压线程数
+    private final int readThreads;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // store 为 null 时不支持按时间范围查询
+    public ProfileServer(AnalyzerOptions options, ProfileStore store) {
+        this.options = options;
+        this.store = store;
+        this.root = Paths.get(options.getServeDir()).toAbsolutePath().normalize();
+        this.profiles = new ProfileLru(options.getMemoryBudgetBytes());
+        this.readThreads = ProfileReader.threadsPerRead(options.getThreads());
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(options.getServeBind(), port), 0);
+        server.createContext("/", this::handle);
+        executor = BatchAnalyzer.newExecutor(options.getThreads());
+        server.setExecutor(executor);
+        server.start();
+        logger.info("HTTP 服务已启动: http://" + options.getServeBind() + ":" + server.getAddress().getPort()
+            + "/ （服务目录 " + root + "）");
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/profiles")) {
+                requireMethod(method, "POST");
+                handleUpload(exchange);
+                return;
+            }
+            requireMethod(method, "GET");
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            switch (path) {
+                case "/": handleIndex(exchange); break;
+                case "/flamegraph": handleFlameGraph(exchange, params); break;
+                case "/callgraph": handleCallGraph(exchange, params); break;
+                case "/top": handleTop(exchange, params); break;
+                default: sendError(exchange, 404, "未知路径: " + path); break;
+            }
+        } catch (MethodNotAllowedException e) {
+            sendError(exchange, 405, e.getMessage());
+        } catch (PayloadTooLargeException e) {
+            sendError(exchange, 413, e.getMessage());
+        } catch (FileNotFoundException e) {
+            sendError(exchange, 404, e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (Exception e) {
+            logger.warning("处理请求 " + exchange.getRequestURI() + " 时出错: " + e.getMessage());
+            sendError(exchange, 500, "服务器内部错误: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleIndex(HttpExchange exchange) throws IOException {
+        List<String> names;
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            names = files.filter(file -> file.getFileName().toString().endsWith(".prof"))
+                .map(file -> root.relativize(file).toString())
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        try (PrintStream out = textResponse(exchange)) {
+            out.println("GET  /flamegraph?profile=<路径>   火焰图（SVG）");
+            out.println("GET  /callgraph?profile=<路径>    调用图（SVG）");
+            out.println("GET  /top?profile=<路径>          top-N（文本）");
+            out.println("POST /profiles                    上传 pprof，返回 id，之后以 id=<id> 代替 profile=<路径>");
+            if (store != null) {
+                out.println("时序存储：以 last=1h 或 from=<ISO时间>&to=<ISO时间> 代替 profile=<路径>");
+            }
+            out.println();
+            out.println(root + " 下的 profile：");
+            for (String name : names) {
+                out.println("  " + name);
+            }
+        }
+    }
+
+    // 上传内容先写入临时文件，解析成功后以内容哈希命名保存，重复上传同一内容只保存一份。
+    // 上传大小以内存预算为上限：Content-Length 超出时直接拒绝，否则边接收边计数，解压后的估算超出时同样拒绝
+    private void handleUpload(HttpExchange exchange) throws IOException, PayloadTooLargeException {
+        long limit = options.getMemoryBudgetBytes();
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null && Long.parseLong(contentLength.trim()) > limit) {
+            throw new PayloadTooLargeException("上传的 profile 超出内存预算 " + (limit >> 20) + " MB");
+        }
+        Path uploads = Files.createDirectories(root.resolve(UPLOAD_DIR));
+        Path temp = Files.createTempFile(uploads, "upload", ".tmp");
+        try {
+            try (InputStream body = exchange.getRequestBody(); OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[1 << 16];
+                long received = 0;
+                int n;
+                while ((n = body.read(buffer)) > 0) {
+                    received += n;
+                    if (received > limit) {
+                        throw new PayloadTooLargeException("上传的 profile 超出内存预算 " + (limit >> 20) + " MB");
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+            long estimatedBytes = BatchAnalyzer.estimateMemory(temp);
+            if (estimatedBytes > limit) {
+                throw new PayloadTooLargeException("上传的 profile 解压后预计超出内存预算 " + (limit >> 20) + " MB");
+            }
+            byte[] hash = ProfileCache.hash(temp);
+            String id = ProfileCache.toHex(hash);
+            try {
+                profiles.put(id, ProfileReader.read(temp, readThreads), estimatedBytes);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("无法解析上传的 profile: " + e.getMessage());
+            }
+            Path target = uploads.resolve(id + ".prof");
+            if (!Files.exists(target)) {
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // 同一内容的并发上传已先一步保存，文件名即内容哈希，内容相同
+                }
+            }
+            try (PrintStream out = textResponse(exchange)) {
+                out.println(id);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void handleFlameGraph(HttpExchange exchange, Map<String, String> params) throws IOException {
+        AggregatedProfile aggregate = aggregate(params);
+        FlameGraphGenerator generator = new FlameGraphGenerator(aggregate, null);
+        String minWidth = params.get("minwidth");
+        generator.setMinWidth(minWidth != null ? Double.parseDouble(minWidth) : options.getMinWidth());
+        generator.generateFlameGraph(openResponse(exchange, "image/svg+xml; charset=utf-8"));
+    }
+
+    private void handleCallGraph(HttpExchange exchange, Map<String, String> params) throws IOException {
+        AggregatedProfile aggregate = aggregate(params);
+        new CallGraphGenerator(aggregate, null).generateCallGraph(
+            new OutputStreamWriter(openResponse(exchange, "image/svg+xml; charset=utf-8"), StandardCharsets.UTF_8));
+    }
+
+    private void handleTop(HttpExchange exchange, Map<String, String> params) throws IOException {
+        AggregatedProfile aggregate = aggregate(params);
+        String count = params.get("n");
+        try (PrintStream out = textResponse(exchange)) {
+            PprofAnalyzer.printTopReports(aggregate, sampleIndex(params), out,
+                count != null ? Integer.parseInt(count) : 10);
+        }
+    }
+
+    // 响应头发送前完成解析和聚合，出错时还能返回对应的状态码
+    private AggregatedProfile aggregate(Map<String, String> params) throws IOException {
+        return PprofAnalyzer.selectSampleType(PprofAnalyzer.aggregate(resolveProfile(params), options),
+            sampleIndex(params));
+    }
+
+    private String sampleIndex(Map<String, String> params) {
+        return params.getOrDefault("sample_index", options.getSampleIndex());
+    }
+
+    private ProfileData resolveProfile(Map<String, String> params) throws IOException {
+        if (params.containsKey("id")) {
+            String id = params.get("id");
+            if (!id.matches("[0-9a-f]{64}")) {
+                throw new IllegalArgumentException("无效的 id: " + id);
+            }
+            return load(root.resolve(UPLOAD_DIR).resolve(id + ".prof"));
+        }
+        if (params.containsKey("profile")) {
+            // 只允许访问服务目录内的文件
+            Path file = root.resolve(params.get("profile")).normalize();
+            if (!file.startsWith(root)) {
+                throw new IllegalArgumentException("profile 路径超出服务目录: " + params.get("profile"));
+            }
+            return load(file);
+        }
+        if (params.containsKey("last") || params.containsKey("from") || params.containsKey("to")) {
+            if (store == null) {
+                throw new IllegalStateException("未指定 --store，不支持按时间范围查询");
+            }
+            String last = params.get("last");
+            return PprofAnalyzer.queryStore(store, params.get("from"), params.get("to"),
+                last != null ? AnalyzerOptions.parseDuration(last) : 0);
+        }
+        throw new IllegalArgumentException("缺少参数：profile、id 或 last/from/to 之一");
+    }
+
+    // 先按内容哈希查 LRU 缓存，未命中时解析（启用了列式缓存时经由磁盘缓存）并放入缓存
+    private ProfileData load(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            throw new FileNotFoundException("找不到 profile: " + root.relativize(file));
+        }
+        ProfileCache cache = null;
+        if (options.getCacheDir() != null) {
+            cache = new ProfileCache(Paths.get(options.getCacheDir()), options.getCacheMaxBytes());
+            cache.setReadThreads(readThreads);
+        }
+        byte[] hash = cache != null ? cache.indexedHash(file) : ProfileCache.memoizedHash(file);
+        String key = ProfileCache.toHex(hash);
+        ProfileData profile = profiles.get(key);
+        if (profile == null) {
+            profile = cache != null ? cache.read(file, hash) : ProfileReader.read(file, readThreads);
+            profiles.put(key, profile, BatchAnalyzer.estimateMemory(file));
+        }
+        return profile;
+    }
+
+    // 客户端接受 gzip 时以 gzip 编码输出；长度未知，使用分块传输
+    private static OutputStream openResponse(HttpExchange exchange, String contentType) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        return gzip ? new GZIPOutputStream(body, 1 << 16) : body;
+    }
+
+    private static PrintStream textResponse(HttpExchange exchange) throws IOException {
+        return new PrintStream(openResponse(exchange, "text/plain; charset=utf-8"), false, StandardCharsets.UTF_8.name());
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // 响应头已经发出，只能中断连接
+            return;
+        }
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void requireMethod(String method, String expected) throws MethodNotAllowedException {
+        if (!method.equals(expected)) {
+            throw new MethodNotAllowedException("不支持的请求方法: " + method + "（应为 " + expected + "）");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static class MethodNotAllowedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class PayloadTooLargeException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        PayloadTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    // 按内容哈希索引的 LRU 缓存；每个 profile 的内存占用按 BatchAnalyzer.estimateMemory 估算。
+    // 同一 profile 的并发请求在未命中时可能各自解析一次，后放入的覆盖先放入的
+    private static class ProfileLru {
+        private final long budgetBytes;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long usedBytes;
+
+        ProfileLru(long budgetBytes) {
+            this.budgetBytes = budgetBytes;
+        }
+
+        synchronized ProfileData get(String key) {
+            Entry entry = entries.get(key);
+            return entry != null ? entry.profile : null;
+        }
+
+        // 单个超出预算的 profile 仍会保留，直到下一次放入时被淘汰
+        synchronized void put(String key, ProfileData profile, long estimatedBytes) {
+            Entry entry = new Entry(profile, estimatedBytes);
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                usedBytes -= previous.estimatedBytes;
+            }
+            usedBytes += entry.estimatedBytes;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (usedBytes > budgetBytes && entries.size() > 1) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                usedBytes -= evicted.getValue().estimatedBytes;
+                eldest.remove();
+                logger.info("从缓存中淘汰 profile: " + evicted.getKey());
+            }
+        }
+    }
+
+    private static class Entry {
+        final ProfileData profile;
+        final long estimatedBytes;
+
+        Entry(ProfileData profile, long estimatedBytes) {
+            this.profile = profile;
+            this.estimatedBytes = estimatedBytes;
+        }
+    }
+}
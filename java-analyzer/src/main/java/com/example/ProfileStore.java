@@ -0,0 +1,438 @@
+package com.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+// 按时间存储 profile 的嵌入式时序库
+// 所有 profile 共用一份符号字典（字符串、Mapping、Function、Location），写入时把新 profile 的符号并入字典，
+// 调用栈换成字典中的 location id 后写成 1m、10m、1h 三级的增量段；同一时间桶内的多个 profile（例如多个实例）
+// 各写一个增量段，桶结束（更新的数据已越过桶的结束时间）或增量段达到 MAX_DELTAS 个时才压缩为该桶的汇总段，
+// 因此每次写入只写出与新 profile 大小相当的数据，不再重写整个 10m、1h 汇总段。
+// 查询时用能完整落在范围内的最粗一级覆盖时间范围，合并其汇总段和尚未压缩的增量段，不再读取原始 profile。
+// 每一级有各自的保留期，以库中最新数据的时间为准计算，过期的汇总段在写入时删除。
+// 目录结构：
+//   symbols.dict           符号字典，格式与 ProfileCache 的符号部分相同
+//   <1m|10m|1h>/<桶起始纳秒>.seg          汇总段：桶起始时间、累计时长、profile 数、已并入的最大增量序号和调用栈列
+//   <1m|10m|1h>/<桶起始纳秒>.<序号>.delta  增量段：格式与汇总段相同，序号大于汇总段记录的才计入，
+//                                         压缩中途失败时已并入的增量段不会被重复计入
+public class ProfileStore {
+    private static final Logger logger = Logger.getLogger(ProfileStore.class.getName());
+    private static final byte[] DICTIONARY_MAGIC = "PPSYMDCT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ROLLUP_MAGIC = "PPROLLUP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final String DICTIONARY_FILE = "symbols.dict";
+    private static final String ROLLUP_SUFFIX = ".seg";
+    private static final String DELTA_SUFFIX = ".delta";
+    // 一个桶未压缩的增量段达到这个数量时提前压缩，限制查询时需要合并的文件数
+    private static final int MAX_DELTAS = 16;
+    private static final long MINUTE_NANOS = 60_000_000_000L;
+
+    // 汇总粒度，从细到粗排列
+    public enum Resolution {
+        MINUTE("1m", MINUTE_NANOS, 24 * 60 * MINUTE_NANOS),
+        TEN_MINUTES("10m", 10 * MINUTE_NANOS, 7 * 24 * 60 * MINUTE_NANOS),
+        HOUR("1h", 60 * MINUTE_NANOS, 30 * 24 * 60 * MINUTE_NANOS);
+
+        private final String label;
+        private final long nanos;
+        private final long defaultRetentionNanos;
+
+        Resolution(String label, long nanos, long defaultRetentionNanos) {
+            this.label = label;
+            this.nanos = nanos;
+            this.defaultRetentionNanos = defaultRetentionNanos;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public static Resolution fromLabel(String label) {
+            for (Resolution resolution : values()) {
+                if (resolution.label.equals(label)) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("未知的汇总粒度: " + label + "（可选 1m、10m、1h）");
+        }
+    }
+
+    private final Path directory;
+    private final long[] retentionNanos = new long[Resolution.values().length];
+    // 不含调用栈的符号字典，库为空时为 null
+    private ProfileData dictionary;
+    // 最新数据所在分钟的结束时间，保留期以它为基准
+    private long latestNanos;
+    // 下一个增量段的序号，全库递增
+    private long nextDelta = 1;
+
+    public ProfileStore(Path directory) throws IOException {
+        this.directory = directory;
+        for (Resolution resolution : Resolution.values()) {
+            retentionNanos[resolution.ordinal()] = resolution.defaultRetentionNanos;
+            Files.createDirectories(directory.resolve(resolution.label));
+        }
+        if (Files.isRegularFile(directory.resolve(DICTIONARY_FILE))) {
+            ProfileData.Builder builder = new ProfileData.Builder();
+            ProfileCache.readSymbols(openDictionary(), builder);
+            dictionary = builder.build();
+        }
+        // 最细一级仍有数据时，其中最新的桶就是最新数据所在的分钟
+        for (Resolution resolution : Resolution.values()) {
+            NavigableMap<Long, List<Segment>> buckets = listSegments(resolution);
+            if (latestNanos == 0 && !buckets.isEmpty()) {
+                latestNanos = buckets.lastKey() + resolution.nanos;
+            }
+            // 增量段可能都已压缩删除，汇总段记录的序号同样不能再用
+            for (List<Segment> segments : buckets.values()) {
+                for (Segment segment : segments) {
+                    long sequence = segment.sequence != 0 ? segment.sequence : readLastDelta(segment.file);
+                    nextDelta = Math.max(nextDelta, sequence + 1);
+                }
+            }
+        }
+    }
+
+    public void setRetention(Resolution resolution, long nanos) {
+        retentionNanos[resolution.ordinal()] = nanos;
+    }
+
+    public long getRetention(Resolution resolution) {
+        return retentionNanos[resolution.ordinal()];
+    }
+
+    public long getLatestNanos() {
+        return latestNanos;
+    }
+
+    // 写入一个 profile：按 time_nanos 归入各级时间桶，随后删除过期的汇总段
+    public synchronized void ingest(ProfileData profile) throws IOException {
+        long timeNanos = profile.getTimeNanos();
+        if (timeNanos <= 0) {
+            throw new IllegalArgumentException("profile 缺少 time_nanos，无法按时间存储");
+        }
+
+        // 并入字典后，结果的调用栈已经使用字典的 location id 和字符串下标；
+        // 内存中的字典直接取合并结果的符号表，不再从刚写出的文件重新读取
+        ProfileData merged = ProfileMerger.extend(dictionary, profile);
+        if (dictionary == null || grew(dictionary, merged)) {
+            dictionary = merged.withStacks(new StackTable(merged.getSampleTypeCount()), 0, 0);
+            writeDictionary(dictionary);
+        }
+        StackTable stacks = merged.getStacks();
+
+        latestNanos = Math.max(latestNanos, bucketStart(timeNanos, Resolution.MINUTE) + MINUTE_NANOS);
+        long sequence = nextDelta++;
+        for (Resolution resolution : Resolution.values()) {
+            long bucket = bucketStart(timeNanos, resolution);
+            if (expired(resolution, bucket)) {
+                continue;
+            }
+            writeRollup(deltaFile(resolution, bucket, sequence),
+                new Rollup(bucket, profile.getDurationNanos(), 1, sequence, stacks));
+        }
+        compact();
+        prune();
+    }
+
+    // 字典只会追加，数量不变即内容不变，不必重写
+    private static boolean grew(ProfileData before, ProfileData after) {
+        return after.getStringCount() != before.getStringCount()
+            || after.getMappingCount() != before.getMappingCount()
+            || after.getFunctionCount() != before.getFunctionCount()
+            || after.getLocationCount() != before.getLocationCount();
+    }
+
+    // 查询 [fromNanos, toNanos) 内的合并结果，边界按分钟取整；细粒度已过保留期的部分改用更粗的汇总段，范围相应向外扩到桶边界。
+    // 结果的 time_nanos 为实际覆盖的起始时间，duration_nanos 为所含 profile 的时长之和
+    public synchronized ProfileData query(long fromNanos, long toNanos) throws IOException {
+        if (dictionary == null) {
+            throw new IllegalStateException("存储中还没有任何 profile: " + directory);
+        }
+        StackTable stacks = new StackTable(dictionary.getSampleTypeCount());
+        Map<Resolution, NavigableMap<Long, List<Segment>>> segments = new EnumMap<>(Resolution.class);
+        long durationNanos = 0;
+        long coveredFrom = 0;
+        int rollups = 0;
+        int profiles = 0;
+        long end = bucketStart(toNanos + MINUTE_NANOS - 1, Resolution.MINUTE);
+        long t = bucketStart(fromNanos, Resolution.MINUTE);
+        while (t < end) {
+            Resolution chosen = choose(t, end);
+            if (chosen == null) {
+                // 所有粒度在 t 处都已过期，跳到下一个小时
+                t = bucketStart(t, Resolution.HOUR) + Resolution.HOUR.nanos;
+                continue;
+            }
+            long bucket = bucketStart(t, chosen);
+            NavigableMap<Long, List<Segment>> chosenSegments = segments.get(chosen);
+            if (chosenSegments == null) {
+                chosenSegments = listSegments(chosen);
+                segments.put(chosen, chosenSegments);
+            }
+            List<Segment> bucketSegments = chosenSegments.get(bucket);
+            if (bucketSegments != null) {
+                Rollup rollup = readBucket(bucket, bucketSegments);
+                stacks.addAll(rollup.stacks);
+                durationNanos += rollup.durationNanos;
+                profiles += rollup.profileCount;
+                if (rollups++ == 0) {
+                    coveredFrom = bucket;
+                }
+            }
+            t = bucket + chosen.nanos;
+        }
+        logger.info("合并了 " + rollups + " 个时间桶，共 " + profiles + " 个 profile");
+        return dictionary.withStacks(stacks, coveredFrom, durationNanos);
+    }
+
+    // 优先选择从 t 开始、能完整落在范围内且未过期的最粗一级；都不满足时取包含 t 的最细的未过期一级
+    private Resolution choose(long t, long end) {
+        Resolution[] resolutions = Resolution.values();
+        for (int i = resolutions.length - 1; i >= 0; i--) {
+            Resolution resolution = resolutions[i];
+            if (t % resolution.nanos == 0 && t + resolution.nanos <= end && !expired(resolution, t)) {
+                return resolution;
+            }
+        }
+        for (Resolution resolution : resolutions) {
+            if (!expired(resolution, bucketStart(t, resolution))) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+
+    // 把已结束或增量段过多的桶压缩为一个汇总段：先原子写出汇总段，再删除已并入的增量段
+    private void compact() throws IOException {
+        for (Resolution resolution : Resolution.values()) {
+            for (Map.Entry<Long, List<Segment>> entry : listSegments(resolution).entrySet()) {
+                long bucket = entry.getKey();
+                List<Segment> segments = entry.getValue();
+                int deltas = segments.get(0).sequence == 0 ? segments.size() - 1 : segments.size();
+                if (deltas == 0 || expired(resolution, bucket)
+                        || (bucket + resolution.nanos > latestNanos && deltas < MAX_DELTAS)) {
+                    continue;
+                }
+                writeRollup(rollupFile(resolution, bucket), readBucket(bucket, segments));
+                for (Segment segment : segments) {
+                    if (segment.sequence != 0) {
+                        Files.deleteIfExists(segment.file);
+                    }
+                }
+            }
+        }
+    }
+
+    // 删除所有过期的汇总段和增量段，返回删除的时间桶数
+    public synchronized int prune() throws IOException {
+        int removed = 0;
+        for (Resolution resolution : Resolution.values()) {
+            for (Map.Entry<Long, List<Segment>> entry : listSegments(resolution).entrySet()) {
+                if (!expired(resolution, entry.getKey())) {
+                    continue;
+                }
+                for (Segment segment : entry.getValue()) {
+                    Files.deleteIfExists(segment.file);
+                }
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            logger.info("删除了 " + removed + " 个过期的汇总段");
+        }
+        return removed;
+    }
+
+    private boolean expired(Resolution resolution, long bucket) {
+        return bucket + resolution.nanos <= latestNanos - retentionNanos[resolution.ordinal()];
+    }
+
+    private static long bucketStart(long nanos, Resolution resolution) {
+        return Math.floorDiv(nanos, resolution.nanos) * resolution.nanos;
+    }
+
+    private Path rollupFile(Resolution resolution, long bucket) {
+        return directory.resolve(resolution.label).resolve(bucket + ROLLUP_SUFFIX);
+    }
+
+    private Path deltaFile(Resolution resolution, long bucket, long sequence) {
+        return directory.resolve(resolution.label).resolve(bucket + "." + sequence + DELTA_SUFFIX);
+    }
+
+    // 该级已有的汇总段和增量段，按桶起始时间升序分组，组内汇总段在前、增量段按序号升序
+    private NavigableMap<Long, List<Segment>> listSegments(Resolution resolution) throws IOException {
+        NavigableMap<Long, List<Segment>> buckets = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.resolve(resolution.label),
+                 "*{" + ROLLUP_SUFFIX + "," + DELTA_SUFFIX + "}")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    Segment segment;
+                    if (name.endsWith(ROLLUP_SUFFIX)) {
+                        segment = new Segment(Long.parseLong(name.substring(0, name.length() - ROLLUP_SUFFIX.length())),
+                            0, file);
+                    } else {
+                        String[] parts = name.substring(0, name.length() - DELTA_SUFFIX.length()).split("\\.");
+                        segment = new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]), file);
+                    }
+                    buckets.computeIfAbsent(segment.bucket, bucket -> new ArrayList<>()).add(segment);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    logger.warning("忽略无法识别的汇总段文件: " + file);
+                }
+            }
+        }
+        for (List<Segment> segments : buckets.values()) {
+            segments.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        }
+        return buckets;
+    }
+
+    // 合并一个桶的汇总段和其后的增量段；序号不大于汇总段记录的增量段已经并入过，跳过
+    private static Rollup readBucket(long bucket, List<Segment> segments) throws IOException {
+        Rollup result = null;
+        for (Segment segment : segments) {
+            if (result != null && segment.sequence <= result.lastDelta) {
+                continue;
+            }
+            Rollup rollup = readRollup(segment.file);
+            if (result == null) {
+                result = rollup;
+            } else {
+                result.stacks.addAll(rollup.stacks);
+                result = new Rollup(bucket, result.durationNanos + rollup.durationNanos,
+                    result.profileCount + rollup.profileCount, Math.max(result.lastDelta, segment.sequence),
+                    result.stacks);
+            }
+        }
+        return result;
+    }
+
+    private ByteBuffer openDictionary() throws IOException {
+        ByteBuffer in = map(directory.resolve(DICTIONARY_FILE));
+        checkHeader(in, DICTIONARY_MAGIC, DICTIONARY_FILE);
+        return in;
+    }
+
+    private void writeDictionary(ProfileData symbols) throws IOException {
+        writeAtomically(directory.resolve(DICTIONARY_FILE), out -> {
+            out.write(DICTIONARY_MAGIC);
+            out.writeInt(VERSION);
+            ProfileCache.writeSymbols(symbols, out);
+        });
+    }
+
+    private static Rollup readRollup(Path file) throws IOException {
+        ByteBuffer in = map(file);
+        checkHeader(in, ROLLUP_MAGIC, file.toString());
+        long bucket = in.getLong();
+        long durationNanos = in.getLong();
+        int profileCount = in.getInt();
+        long lastDelta = in.getLong();
+        return new Rollup(bucket, durationNanos, profileCount, lastDelta, ProfileCache.readStacks(in));
+    }
+
+    // 只读取汇总段头部的 lastDelta，跳过桶起始时间、累计时长和 profile 数
+    private static long readLastDelta(Path file) throws IOException {
+        ByteBuffer in = map(file);
+        checkHeader(in, ROLLUP_MAGIC, file.toString());
+        in.position(in.position() + Long.BYTES * 2 + Integer.BYTES);
+        return in.getLong();
+    }
+
+    private static void writeRollup(Path file, Rollup rollup) throws IOException {
+        writeAtomically(file, out -> {
+            out.write(ROLLUP_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(rollup.bucket);
+            out.writeLong(rollup.durationNanos);
+            out.writeInt(rollup.profileCount);
+            out.writeLong(rollup.lastDelta);
+            ProfileCache.writeStacks(rollup.stacks, out);
+        });
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void checkHeader(ByteBuffer in, byte[] expectedMagic, String name) throws IOException {
+        byte[] magic = new byte[expectedMagic.length];
+        in.get(magic);
+        if (!Arrays.equals(magic, expectedMagic) || in.getInt() != VERSION) {
+            throw new IOException("无法识别的存储文件: " + name);
+        }
+    }
+
+    // 先写临时文件再原子替换，写入中途失败不会破坏已有文件
+    private static void writeAtomically(Path file, FileWriter writer) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+                writer.write(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private interface FileWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // 一个时间桶的汇总段或增量段；lastDelta 为已并入的最大增量序号，增量段为其自身的序号
+    private static class Rollup {
+        final long bucket;
+        final long durationNanos;
+        final int profileCount;
+        final long lastDelta;
+        final StackTable stacks;
+
+        Rollup(long bucket, long durationNanos, int profileCount, long lastDelta, StackTable stacks) {
+            this.bucket = bucket;
+            this.durationNanos = durationNanos;
+            this.profileCount = profileCount;
+            this.lastDelta = lastDelta;
+            this.stacks = stacks;
+        }
+    }
+
+    // 目录中的一个段文件，sequence 为 0 表示汇总段
+    private static class Segment {
+        final long bucket;
+        final long sequence;
+        final Path file;
+
+        Segment(long bucket, long sequence, Path file) {
+            this.bucket = bucket;
+            this.sequence = sequence;
+            this.file = file;
+        }
+    }
+}
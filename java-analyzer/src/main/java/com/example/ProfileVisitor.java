@@ -0,0 +1,132 @@
+package com.example;
+
+// 流式解码回调接口：ProfileDecoder 按字段在输入中出现的顺序逐条回调，
+// 不会在内存中构建完整的 Profile 对象。所有方法默认忽略，按需覆盖即可。
+public interface ProfileVisitor {
+
+    // sample_type = 1
+    default void visitSampleType(long type, long unit) {
+    }
+
+    // sample = 2，record 为解码器复用的缓冲区，回调返回后内容即失效
+    default void visitSample(SampleRecord record) {
+    }
+
+    // mapping = 3
+    default void visitMapping(long id, long memoryStart, long memoryLimit, long fileOffset,
+                              long filename, long buildId, int flags) {
+    }
+
+    // location = 4，record 同样是复用的缓冲区
+    default void visitLocation(LocationRecord record) {
+    }
+
+    // function = 5
+    default void visitFunction(long id, long name, long systemName, long filename, long startLine) {
+    }
+
+    // string_table = 6，index 为字符串在表中的下标
+    default void visitString(int index, String value) {
+    }
+
+    // period_type = 11
+    default void visitPeriodType(long type, long unit) {
+    }
+
+    // comment = 13
+    default void visitComment(long stringIndex) {
+    }
+
+    // 其余标量头部字段：drop_frames、keep_frames、time_nanos、duration_nanos、
+    // period、default_sample_type、doc_url，fieldNumber 为 proto 中的字段号
+    default void visitHeader(int fieldNumber, long value) {
+    }
+
+    // 输入全部读取完毕
+    default void visitEnd() {
+    }
+
+    // Mapping 中的布尔字段按位打包
+    int HAS_FUNCTIONS = 1;
+    int HAS_FILENAMES = 1 << 1;
+    int HAS_LINE_NUMBERS = 1 << 2;
+    int HAS_INLINE_FRAMES = 1 << 3;
+
+    // 可复用的样本缓冲区，避免每个样本分配对象
+    final class SampleRecord {
+        public long[] locationIds = new long[64];
+        public int locationCount;
+        public long[] values = new long[4];
+        public int valueCount;
+        // 标签按列存储：key、str、num、num_unit 均为下标对齐的数组
+        public long[] labelKeys = new long[4];
+        public long[] labelStrs = new long[4];
+        public long[] labelNums = new long[4];
+        public long[] labelNumUnits = new long[4];
+        public int labelCount;
+
+        void clear() {
+            locationCount = 0;
+            valueCount = 0;
+            labelCount = 0;
+        }
+
+        void addLocationId(long id) {
+            if (locationCount == locationIds.length) {
+                locationIds = java.util.Arrays.copyOf(locationIds, locationCount * 2);
+            }
+            locationIds[locationCount++] = id;
+        }
+
+        void addValue(long value) {
+            if (valueCount == values.length) {
+                values = java.util.Arrays.copyOf(values, valueCount * 2);
+            }
+            values[valueCount++] = value;
+        }
+
+        void addLabel(long key, long str, long num, long numUnit) {
+            if (labelCount == labelKeys.length) {
+                int size = labelCount * 2;
+                labelKeys = java.util.Arrays.copyOf(labelKeys, size);
+                labelStrs = java.util.Arrays.copyOf(labelStrs, size);
+                labelNums = java.util.Arrays.copyOf(labelNums, size);
+                labelNumUnits = java.util.Arrays.copyOf(labelNumUnits, size);
+            }
+            labelKeys[labelCount] = key;
+            labelStrs[labelCount] = str;
+            labelNums[labelCount] = num;
+            labelNumUnits[labelCount] = numUnit;
+            labelCount++;
+        }
+    }
+
+    // 可复用的 Location 缓冲区，line 按 function_id / line 两列存储
+    final class LocationRecord {
+        public long id;
+        public long mappingId;
+        public long address;
+        public boolean isFolded;
+        public long[] lineFunctionIds = new long[8];
+        public long[] lineNumbers = new long[8];
+        public int lineCount;
+
+        void clear() {
+            id = 0;
+            mappingId = 0;
+            address = 0;
+            isFolded = false;
+            lineCount = 0;
+        }
+
+        void addLine(long functionId, long line) {
+            if (lineCount == lineFunctionIds.length) {
+                lineFunctionIds = java.util.Arrays.copyOf(lineFunctionIds, lineCount * 2);
+                lineNumbers = java.util.Arrays.copyOf(lineNumbers, lineCount * 2);
+            }
+            lineFunctionIds[lineCount] = functionId;
+            lineNumbers[lineCount] = line;
+            lineCount++;
+        }
+    }
+}
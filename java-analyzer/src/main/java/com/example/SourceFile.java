@@ -0,0 +1,87 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 通过 FileChannel.map 读取的源文件及其行偏移索引
+// 打开时扫描一遍换行符建立索引，之后按行号直接定位，只有被请求的行才解码为字符串；
+// 同一文件在进程内缓存，大小或修改时间变化时重新映射
+public class SourceFile {
+    private static final Map<Path, SourceFile> CACHE = new ConcurrentHashMap<>();
+
+    private final long size;
+    private final long modified;
+    private final ByteBuffer content;
+    private final int[] lineStarts;    // 第 n 行（从 1 开始）的起始偏移为 lineStarts[n - 1]，末尾附加文件长度
+
+    private SourceFile(Path path, long size, long modified) throws IOException {
+        this.size = size;
+        this.modified = modified;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        IntArrayList starts = new IntArrayList();
+        starts.add(0);
+        for (int i = 0; i < size; i++) {
+            if (content.get(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        if (starts.get(starts.size() - 1) != size) {
+            starts.add((int) size);
+        }
+        this.lineStarts = starts.toArray();
+    }
+
+    // 打开或从缓存取出源文件；文件不存在或超过 2GB 时返回 null
+    public static SourceFile open(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        if (!Files.isRegularFile(key)) {
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        SourceFile cached = CACHE.get(key);
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            return cached;
+        }
+        SourceFile file = new SourceFile(key, size, modified);
+        CACHE.put(key, file);
+        return file;
+    }
+
+    public int getLineCount() {
+        return lineStarts.length - 1;
+    }
+
+    // 第 lineNumber 行的文本（从 1 开始，不含换行符），超出范围时返回空串
+    public String getLine(int lineNumber) {
+        if (lineNumber < 1 || lineNumber > getLineCount()) {
+            return "";
+        }
+        int start = lineStarts[lineNumber - 1];
+        int end = lineStarts[lineNumber];
+        while (end > start && (content.get(end - 1) == '\n' || content.get(end - 1) == '\r')) {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        // duplicate 得到独立的位置，多个线程可以同时读取同一个映射
+        ByteBuffer view = content.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
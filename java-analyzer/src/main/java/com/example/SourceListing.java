@@ -0,0 +1,239 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+// 与 go tool pprof -list 相同的源码标注：按正则选出函数，逐行输出 flat/cum 和源码
+// 构建时为所选函数的每个 (函数, 行号) 分配槽位，并按 location 预先展开成槽位数组（所有 line，包括内联），
+// ProfileAggregator 在主遍历中按槽位累加，不需要第二次遍历样本。
+// 每个函数另有一个汇总槽位，记录函数整体的 cum（同一样本只计一次，不等于各行 cum 之和）
+public class SourceListing {
+    private static final Logger logger = Logger.getLogger(SourceListing.class.getName());
+
+    private final ProfileData profile;
+    private final SymbolResolver resolver;
+    private final Path sourceRoot;
+    private final int[] locationSlotStart;   // CSR 偏移，长度为 location 数 + 1
+    private final int[] locationSlots;       // location 每条 line 的行槽位，不属于所选函数时为 -1
+    private final int lineSlotCount;
+    private final int[] slotRoutines;
+    private final long[] slotLines;
+    private final List<Routine> routines = new ArrayList<>();
+    private final Map<String, Path> resolvedSources = new HashMap<>();
+
+    public SourceListing(SymbolResolver resolver, String functionRegex, String sourceRoot) {
+        this.profile = resolver.getProfile();
+        this.resolver = resolver;
+        this.sourceRoot = Paths.get(sourceRoot);
+        Pattern pattern = Pattern.compile(functionRegex);
+
+        // 正则对每个函数名的字符串下标只求值一次；函数按 (名称, 文件名) 的字符串下标打包后归入同一个 routine
+        Map<Long, Boolean> nameMatches = new HashMap<>();
+        LongIntHashMap routineIndex = new LongIntHashMap();
+        int[] functionRoutines = new int[profile.getFunctionCount()];
+        for (int i = 0; i < functionRoutines.length; i++) {
+            long name = profile.getFunctionName(i);
+            boolean matches = nameMatches.computeIfAbsent(name, n -> pattern.matcher(profile.getString(n)).find());
+            if (!matches) {
+                functionRoutines[i] = -1;
+                continue;
+            }
+            long filename = profile.getFunctionFilename(i);
+            long key = (name << 32) | (filename & 0xFFFFFFFFL);
+            int routine = routineIndex.get(key, -1);
+            if (routine < 0) {
+                routine = routines.size();
+                routineIndex.put(key, routine);
+                routines.add(new Routine(profile.getString(name), profile.getString(filename),
+                    profile.getFunctionStartLine(i)));
+            }
+            functionRoutines[i] = routine;
+        }
+
+        LongIntHashMap slotIndex = new LongIntHashMap();
+        IntArrayList routineOfSlot = new IntArrayList();
+        LongArrayList lineOfSlot = new LongArrayList();
+        IntArrayList slots = new IntArrayList();
+        this.locationSlotStart = new int[profile.getLocationCount() + 1];
+        for (int location = 0; location < profile.getLocationCount(); location++) {
+            for (int line = 0; line < profile.getLocationLineCount(location); line++) {
+                int function = resolver.getFunctionIndex(profile.getLocationLineFunctionId(location, line));
+                int routine = function >= 0 ? functionRoutines[function] : -1;
+                int slot = -1;
+                if (routine >= 0) {
+                    long lineNumber = profile.getLocationLineNumber(location, line);
+                    long key = ((long) routine << 32) | (lineNumber & 0xFFFFFFFFL);
+                    slot = slotIndex.get(key, -1);
+                    if (slot < 0) {
+                        slot = routineOfSlot.size();
+                        slotIndex.put(key, slot);
+                        routineOfSlot.add(routine);
+                        lineOfSlot.add(lineNumber);
+                    }
+                }
+                slots.add(slot);
+            }
+            locationSlotStart[location + 1] = slots.size();
+        }
+        this.locationSlots = slots.toArray();
+        this.lineSlotCount = routineOfSlot.size();
+        this.slotRoutines = routineOfSlot.toArray();
+        this.slotLines = lineOfSlot.toArray();
+    }
+
+    // 行槽位在前，函数汇总槽位在后
+    public int getSlotCount() {
+        return lineSlotCount + routines.size();
+    }
+
+    int getRoutineSlot(int lineSlot) {
+        return lineSlotCount + slotRoutines[lineSlot];
+    }
+
+    // 调用栈中每条 line 的行槽位，按从叶子到根的顺序写入 out；不属于所选函数的 line 为 -1
+    int resolveLines(StackTable stacks, int stack, IntArrayList out) {
+        out.clear();
+        int depth = stacks.getDepth(stack);
+        for (int i = 0; i < depth; i++) {
+            int location = resolver.getLocationIndex(stacks.getLocationId(stack, i));
+            if (location < 0) {
+                continue;
+            }
+            for (int j = locationSlotStart[location]; j < locationSlotStart[location + 1]; j++) {
+                out.add(locationSlots[j]);
+            }
+        }
+        return out.size();
+    }
+
+    // 按函数 cum 从大到小输出每个函数的源码，行号范围为函数起始行到最后一个有样本的行
+    public void print(AggregatedProfile aggregate, PrintStream out) throws IOException {
+        Costs costs = aggregate.getListingCosts();
+        int column = aggregate.getSampleIndex();
+        long[] flat = costs.flat[column];
+        long[] cum = costs.cum[column];
+        ValueFormatter formatter = aggregate.getFormatter();
+        long percentBase = Math.max(aggregate.getTotalSamples(), 1);
+
+        Integer[] order = new Integer[routines.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(cum[lineSlotCount + b], cum[lineSlotCount + a]));
+
+        for (int routine : order) {
+            long routineCum = cum[lineSlotCount + routine];
+            if (routineCum == 0 && flat[lineSlotCount + routine] == 0) {
+                continue;
+            }
+            // 行号 -> (flat, cum)
+            Map<Long, long[]> lineCosts = new HashMap<>();
+            long firstLine = Long.MAX_VALUE;
+            long lastLine = 0;
+            for (int slot = 0; slot < lineSlotCount; slot++) {
+                if (slotRoutines[slot] != routine || (flat[slot] == 0 && cum[slot] == 0)) {
+                    continue;
+                }
+                lineCosts.put(slotLines[slot], new long[]{flat[slot], cum[slot]});
+                firstLine = Math.min(firstLine, slotLines[slot]);
+                lastLine = Math.max(lastLine, slotLines[slot]);
+            }
+            Routine info = routines.get(routine);
+            if (info.startLine > 0 && info.startLine < firstLine) {
+                firstLine = info.startLine;
+            }
+
+            out.println("ROUTINE ======================== " + info.name + " in " + info.filename);
+            out.println(String.format("%10s %10s (flat, cum) %.2f%% of Total",
+                formatter.format(flat[lineSlotCount + routine]), formatter.format(routineCum),
+                100.0 * routineCum / percentBase));
+            SourceFile source = openSource(info.filename);
+            if (source == null) {
+                logger.warning("找不到源文件: " + info.filename + "（源码根目录 " + sourceRoot + "）");
+            }
+            for (long line = firstLine; line <= lastLine; line++) {
+                long[] values = lineCosts.get(line);
+                if (source == null && values == null) {
+                    continue;
+                }
+                out.println(String.format("%10s %10s %6d:%s",
+                    values != null && values[0] != 0 ? formatter.format(values[0]) : ".",
+                    values != null && values[1] != 0 ? formatter.format(values[1]) : ".",
+                    line, source != null ? source.getLine((int) line) : ""));
+            }
+        }
+    }
+
+    // 先按原路径查找，再在源码根目录下依次尝试去掉前缀目录后的路径，最长的匹配优先
+    private SourceFile openSource(String filename) throws IOException {
+        if (!resolvedSources.containsKey(filename)) {
+            resolvedSources.put(filename, findSource(filename));
+        }
+        Path path = resolvedSources.get(filename);
+        return path != null ? SourceFile.open(path) : null;
+    }
+
+    private Path findSource(String filename) {
+        if (filename.isEmpty()) {
+            return null;
+        }
+        Path path;
+        try {
+            path = Paths.get(filename);
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (path.isAbsolute() && path.toFile().isFile()) {
+            return path;
+        }
+        for (int i = 0; i < path.getNameCount(); i++) {
+            Path candidate = sourceRoot.resolve(path.subpath(i, path.getNameCount()));
+            if (candidate.toFile().isFile()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // 一次聚合得到的各槽位的值，按 [value 列][槽位] 索引
+    static class Costs {
+        final long[][] flat;
+        final long[][] cum;
+
+        Costs(int width, int slotCount) {
+            flat = new long[width][slotCount];
+            cum = new long[width][slotCount];
+        }
+
+        void merge(Costs other) {
+            for (int column = 0; column < flat.length; column++) {
+                for (int slot = 0; slot < flat[column].length; slot++) {
+                    flat[column][slot] += other.flat[column][slot];
+                    cum[column][slot] += other.cum[column][slot];
+                }
+            }
+        }
+    }
+
+    private static class Routine {
+        final String name;
+        final String filename;
+        final long startLine;
+
+        Routine(String name, String filename, long startLine) {
+            this.name = name;
+            this.filename = filename;
+            this.startLine = startLine;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example;
+
+import java.util.Arrays;
+
+// 按 location_id 序列和标签集合去重的调用栈表
+// 相同调用栈、相同标签的样本在解码时即合并，所有 value 列逐列累加，
+// 因此内存只与不同 (调用栈, 标签) 组合的数量成正比，而不是样本数量。
+// 标签以字符串表下标保存，每个标签占 LABEL_FIELDS 个 long：key、str、num、num_unit
+public class StackTable {
+    public static final int LABEL_FIELDS = 4;
+
+    private long[] locationPool = new long[1024];
+    private int poolSize;
+    private int[] offsets = new int[65];
+    private long[] labelPool = new long[64];
+    private int labelPoolSize;
+    private int[] labelOffsets = new int[65];
+    private int[] hashes = new int[64];
+    private long[] values = new long[64];
+    private int valueWidth;
+    private int stackCount;
+
+    // 开放寻址哈希槽，存放 stack 下标 + 1，0 表示空槽
+    private int[] slots = new int[128];
+    // 经 addUnique 追加后哈希槽尚未建立，下一次 add 时再统一计算
+    private boolean indexed = true;
+
+    public StackTable(int valueWidth) {
+        this.valueWidth = Math.max(valueWidth, 1);
+        this.values = new long[64 * this.valueWidth];
+    }
+
+    // 累加一条样本，返回其调用栈下标；labels 按 key、str、num、num_unit 打包，
+    // 调用方应先按固定顺序排列，顺序不同的相同标签集合会被视为不同的调用栈
+    public int add(long[] locationIds, int locationCount, long[] labels, int labelCount,
+                   long[] sampleValues, int valueCount) {
+        if (valueCount > valueWidth) {
+            widen(valueCount);
+        }
+        if (!indexed) {
+            reindex();
+        }
+        int labelLength = labelCount * LABEL_FIELDS;
+        int hash = hash(locationIds, 0, locationCount, labels, 0, labelLength);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                break;
+            }
+            int stack = entry - 1;
+            if (hashes[stack] == hash && matches(stack, locationIds, locationCount, labels, labelLength)) {
+                accumulate(stack, sampleValues, valueCount);
+                return stack;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int stack = append(locationIds, locationCount, labels, labelLength, hash);
+        slots[slot] = stack + 1;
+        accumulate(stack, sampleValues, valueCount);
+        if (stackCount * 2 > slots.length) {
+            rehash();
+        }
+        return stack;
+    }
+
+    // 追加一个已知与现有调用栈都不同的调用栈（例如从列式缓存恢复），labels 须已排好序；
+    // 不计算哈希也不查重，只有之后再调用 add 时才建立哈希槽
+    void addUnique(long[] locationIds, int locationCount, long[] labels, int labelCount,
+                   long[] sampleValues, int valueCount) {
+        if (valueCount > valueWidth) {
+            widen(valueCount);
+        }
+        int stack = append(locationIds, locationCount, labels, labelCount * LABEL_FIELDS, 0);
+        accumulate(stack, sampleValues, valueCount);
+        indexed = false;
+    }
+
+    // 把另一张表的调用栈逐个累加进来，两张表的 location id 和标签须来自同一个符号空间
+    public void addAll(StackTable other) {
+        long[] locationIds = new long[64];
+        long[] labels = new long[16];
+        long[] sampleValues = new long[other.valueWidth];
+        for (int stack = 0; stack < other.stackCount; stack++) {
+            int depth = other.getDepth(stack);
+            if (depth > locationIds.length) {
+                locationIds = new long[depth * 2];
+            }
+            System.arraycopy(other.locationPool, other.offsets[stack], locationIds, 0, depth);
+            int labelLength = other.labelOffsets[stack + 1] - other.labelOffsets[stack];
+            if (labelLength > labels.length) {
+                labels = new long[labelLength * 2];
+            }
+            System.arraycopy(other.labelPool, other.labelOffsets[stack], labels, 0, labelLength);
+            System.arraycopy(other.values, stack * other.valueWidth, sampleValues, 0, other.valueWidth);
+            add(locationIds, depth, labels, labelLength / LABEL_FIELDS, sampleValues, other.valueWidth);
+        }
+    }
+
+    public int size() {
+        return stackCount;
+    }
+
+    public int getValueWidth() {
+        return valueWidth;
+    }
+
+    public int getDepth(int stack) {
+        return offsets[stack + 1] - offsets[stack];
+    }
+
+    // 第 i 个 location_id，i = 0 为调用栈顶部（叶子）
+    public long getLocationId(int stack, int i) {
+        return locationPool[offsets[stack] + i];
+    }
+
+    public long getValue(int stack, int valueIndex) {
+        return valueIndex < valueWidth ? values[stack * valueWidth + valueIndex] : 0;
+    }
+
+    public int getLabelCount(int stack) {
+        return (labelOffsets[stack + 1] - labelOffsets[stack]) / LABEL_FIELDS;
+    }
+
+    // 第 i 个标签的 key（字符串表下标）
+    public long getLabelKey(int stack, int i) {
+        return labelPool[labelOffsets[stack] + i * LABEL_FIELDS];
+    }
+
+    // 字符串值（字符串表下标），数值标签为 0
+    public long getLabelStr(int stack, int i) {
+        return labelPool[labelOffsets[stack] + i * LABEL_FIELDS + 1];
+    }
+
+    public long getLabelNum(int stack, int i) {
+        return labelPool[labelOffsets[stack] + i * LABEL_FIELDS + 2];
+    }
+
+    public long getLabelNumUnit(int stack, int i) {
+        return labelPool[labelOffsets[stack] + i * LABEL_FIELDS + 3];
+    }
+
+    private boolean matches(int stack, long[] locationIds, int locationCount, long[] labels, int labelLength) {
+        int start = offsets[stack];
+        if (offsets[stack + 1] - start != locationCount) {
+            return false;
+        }
+        int labelStart = labelOffsets[stack];
+        if (labelOffsets[stack + 1] - labelStart != labelLength) {
+            return false;
+        }
+        for (int i = 0; i < locationCount; i++) {
+            if (locationPool[start + i] != locationIds[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < labelLength; i++) {
+            if (labelPool[labelStart + i] != labels[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int append(long[] locationIds, int locationCount, long[] labels, int labelLength, int hash) {
+        if (poolSize + locationCount > locationPool.length) {
+            locationPool = Arrays.copyOf(locationPool, Math.max(locationPool.length * 2, poolSize + locationCount));
+        }
+        System.arraycopy(locationIds, 0, locationPool, poolSize, locationCount);
+        poolSize += locationCount;
+        if (labelPoolSize + labelLength > labelPool.length) {
+            labelPool = Arrays.copyOf(labelPool, Math.max(labelPool.length * 2, labelPoolSize + labelLength));
+        }
+        System.arraycopy(labels, 0, labelPool, labelPoolSize, labelLength);
+        labelPoolSize += labelLength;
+
+        if (stackCount + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            labelOffsets = Arrays.copyOf(labelOffsets, offsets.length);
+        }
+        if (stackCount == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            values = Arrays.copyOf(values, hashes.length * valueWidth);
+        }
+        hashes[stackCount] = hash;
+        offsets[stackCount + 1] = poolSize;
+        labelOffsets[stackCount + 1] = labelPoolSize;
+        return stackCount++;
+    }
+
+    private void accumulate(int stack, long[] sampleValues, int valueCount) {
+        int base = stack * valueWidth;
+        for (int i = 0; i < valueCount; i++) {
+            values[base + i] += sampleValues[i];
+        }
+    }
+
+    // 个别样本的 value 列数多于之前的样本时，按新的列宽重新排布
+    private void widen(int newWidth) {
+        long[] widened = new long[hashes.length * newWidth];
+        for (int stack = 0; stack < stackCount; stack++) {
+            System.arraycopy(values, stack * valueWidth, widened, stack * newWidth, valueWidth);
+        }
+        values = widened;
+        valueWidth = newWidth;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int stack = 0; stack < stackCount; stack++) {
+            int slot = hashes[stack] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = stack + 1;
+        }
+        slots = newSlots;
+    }
+
+    private void reindex() {
+        for (int stack = 0; stack < stackCount; stack++) {
+            int start = offsets[stack];
+            int labelStart = labelOffsets[stack];
+            hashes[stack] = hash(locationPool, start, offsets[stack + 1] - start,
+                labelPool, labelStart, labelOffsets[stack + 1] - labelStart);
+        }
+        int size = 128;
+        while (stackCount * 2 > size) {
+            size *= 2;
+        }
+        slots = new int[size / 2];
+        rehash();
+        indexed = true;
+    }
+
+    private static int hash(long[] locationIds, int locationStart, int locationCount,
+                            long[] labels, int labelStart, int labelLength) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < locationCount; i++) {
+            h = (h ^ locationIds[locationStart + i]) * 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 29;
+        }
+        for (int i = 0; i < labelLength; i++) {
+            h = (h ^ labels[labelStart + i]) * 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 29;
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+}
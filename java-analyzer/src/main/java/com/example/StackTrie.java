@@ -0,0 +1,336 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+// 以帧下标为键的调用栈前缀树
+// 节点按列存储在基本类型数组中，子节点通过以 (父节点, 帧) 打包成 long 的开放寻址表查找，
+// 插入时同时维护最大深度、不同调用栈数和每个帧的累计值，不再需要拼接和拆分折叠字符串。
+// 每个节点保存 valueWidth 列值（与 profile 的 value 列一一对应，按节点连续存放），
+// getValue 等不带列号的方法以及子节点排序使用 valueIndex 指定的列
+public class StackTrie {
+    public static final int ROOT = 0;
+
+    private final int valueWidth;
+    private final int valueIndex;
+    private int[] parents = new int[256];
+    private int[] frames = new int[256];
+    private long[] values;
+    private long[] selfValues;
+    private boolean[] terminal = new boolean[256];
+    private int nodeCount = 1;
+
+    private final LongIntHashMap childIndex;
+    private long[] frameTotals;
+    private int maxDepth;
+    private int distinctStacks;
+
+    // 子节点的 CSR 视图，按值从大到小排序，首次访问时构建
+    private int[] childStart;
+    private int[] childNodes;
+
+    public StackTrie(int frameCount) {
+        this(frameCount, 1);
+    }
+
+    public StackTrie(int frameCount, int valueWidth) {
+        this.valueWidth = Math.max(valueWidth, 1);
+        this.valueIndex = 0;
+        this.values = new long[256 * this.valueWidth];
+        this.selfValues = new long[256 * this.valueWidth];
+        this.childIndex = new LongIntHashMap(256);
+        this.parents[ROOT] = -1;
+        this.frames[ROOT] = -1;
+        this.frameTotals = new long[Math.max(frameCount, 1) * this.valueWidth];
+    }
+
+    // 共享 source 全部节点数据、以另一列排序和取值的视图，只在插入完成后使用
+    private StackTrie(StackTrie source, int valueIndex) {
+        this.valueWidth = source.valueWidth;
+        this.valueIndex = valueIndex;
+        this.parents = source.parents;
+        this.frames = source.frames;
+        this.values = source.values;
+        this.selfValues = source.selfValues;
+        this.terminal = source.terminal;
+        this.nodeCount = source.nodeCount;
+        this.childIndex = source.childIndex;
+        this.frameTotals = source.frameTotals;
+        this.maxDepth = source.maxDepth;
+        this.distinctStacks = source.distinctStacks;
+    }
+
+    // 以第 valueIndex 列为准的视图；列号与当前相同时返回自身
+    public StackTrie withValueIndex(int valueIndex) {
+        if (valueIndex < 0 || valueIndex >= valueWidth) {
+            throw new IllegalArgumentException("value 列下标越界: " + valueIndex);
+        }
+        return valueIndex == this.valueIndex ? this : new StackTrie(this, valueIndex);
+    }
+
+    // 插入一个调用栈，stack 按从叶子到根的顺序排列，sampleValues 至少包含 valueWidth 列，返回末端节点
+    public int insert(IntArrayList stack, long[] sampleValues) {
+        int depth = stack.size();
+        addValues(values, ROOT, sampleValues);
+        int node = ROOT;
+        for (int i = depth - 1; i >= 0; i--) {
+            int frame = stack.get(i);
+            node = child(node, frame);
+            addValues(values, node, sampleValues);
+            addValues(frameTotals, frame, sampleValues);
+        }
+        if (depth > 0) {
+            addValues(selfValues, node, sampleValues);
+            if (!terminal[node]) {
+                terminal[node] = true;
+                distinctStacks++;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return node;
+    }
+
+    private void addValues(long[] target, int row, long[] sampleValues) {
+        int base = row * valueWidth;
+        for (int column = 0; column < valueWidth; column++) {
+            target[base + column] += sampleValues[column];
+        }
+    }
+
+    // 把另一棵前缀树并入本树，frameMap 将源树的帧下标映射为本树的帧下标；
+    // 源树中子节点的下标总大于父节点，按下标顺序遍历一次即可。返回源节点到本树节点的映射。
+    // addValues 为 false 时只合并结构，调用方可自行记录源树的值（例如差分火焰图的基线）。
+    // 两棵树列数相同时逐列累加，否则把源树当前列的值累加到本树的每一列
+    public int[] graft(StackTrie source, int[] frameMap, boolean addValues) {
+        int[] nodeMap = new int[source.nodeCount];
+        int[] depths = new int[source.nodeCount];
+        int[] columns = new int[valueWidth];
+        for (int column = 0; column < valueWidth; column++) {
+            columns[column] = valueWidth == source.valueWidth ? column : source.valueIndex;
+        }
+        nodeMap[ROOT] = ROOT;
+        if (addValues) {
+            graftValues(values, ROOT, source.values, ROOT, source.valueWidth, columns);
+        }
+        for (int node = 1; node < source.nodeCount; node++) {
+            int parent = source.parents[node];
+            int frame = frameMap[source.frames[node]];
+            int target = child(nodeMap[parent], frame);
+            nodeMap[node] = target;
+            depths[node] = depths[parent] + 1;
+            if (!addValues) {
+                continue;
+            }
+            graftValues(values, target, source.values, node, source.valueWidth, columns);
+            graftValues(selfValues, target, source.selfValues, node, source.valueWidth, columns);
+            graftValues(frameTotals, frame, source.values, node, source.valueWidth, columns);
+            if (source.terminal[node] && !terminal[target]) {
+                terminal[target] = true;
+                distinctStacks++;
+            }
+            if (source.terminal[node]) {
+                maxDepth = Math.max(maxDepth, depths[node]);
+            }
+        }
+        return nodeMap;
+    }
+
+    private void graftValues(long[] target, int row, long[] source, int sourceRow, int sourceWidth, int[] columns) {
+        int base = row * valueWidth;
+        int sourceBase = sourceRow * sourceWidth;
+        for (int column = 0; column < valueWidth; column++) {
+            target[base + column] += source[sourceBase + columns[column]];
+        }
+    }
+
+    private int child(int parent, int frame) {
+        long key = ((long) parent << 32) | (frame & 0xFFFFFFFFL);
+        int node = childIndex.get(key, -1);
+        if (node >= 0) {
+            return node;
+        }
+        if (nodeCount == parents.length) {
+            grow();
+        }
+        node = nodeCount++;
+        parents[node] = parent;
+        frames[node] = frame;
+        childIndex.put(key, node);
+        if ((frame + 1) * valueWidth > frameTotals.length) {
+            frameTotals = Arrays.copyOf(frameTotals, Math.max((frame + 1) * valueWidth, frameTotals.length * 2));
+        }
+        childStart = null;
+        return node;
+    }
+
+    private void grow() {
+        int capacity = parents.length * 2;
+        parents = Arrays.copyOf(parents, capacity);
+        frames = Arrays.copyOf(frames, capacity);
+        values = Arrays.copyOf(values, capacity * valueWidth);
+        selfValues = Arrays.copyOf(selfValues, capacity * valueWidth);
+        terminal = Arrays.copyOf(terminal, capacity);
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    public int getFrame(int node) {
+        return frames[node];
+    }
+
+    public int getValueWidth() {
+        return valueWidth;
+    }
+
+    public int getValueIndex() {
+        return valueIndex;
+    }
+
+    public long getValue(int node) {
+        return values[node * valueWidth + valueIndex];
+    }
+
+    public long getValue(int node, int column) {
+        return values[node * valueWidth + column];
+    }
+
+    public long getSelfValue(int node) {
+        return selfValues[node * valueWidth + valueIndex];
+    }
+
+    public long getSelfValue(int node, int column) {
+        return selfValues[node * valueWidth + column];
+    }
+
+    public long getTotal() {
+        return getValue(ROOT);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getDistinctStacks() {
+        return distinctStacks;
+    }
+
+    // 帧在所有调用栈中出现时累加的值（每次出现都计入）
+    public long getFrameTotal(int frame) {
+        int index = frame * valueWidth + valueIndex;
+        return index < frameTotals.length ? frameTotals[index] : 0;
+    }
+
+    public int getChildCount(int node) {
+        ensureChildren();
+        return childStart[node + 1] - childStart[node];
+    }
+
+    // 第 i 个子节点，按值从大到小排列
+    public int getChild(int node, int i) {
+        ensureChildren();
+        return childNodes[childStart[node] + i];
+    }
+
+    private void ensureChildren() {
+        if (childStart == null) {
+            buildChildIndex();
+        }
+    }
+
+    // 重建按值排序的子节点索引（布局阶段），通常在首次访问子节点时自动触发
+    public void buildChildIndex() {
+        int[] start = new int[nodeCount + 1];
+        for (int node = 1; node < nodeCount; node++) {
+            start[parents[node] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] fill = Arrays.copyOf(start, nodeCount);
+        int[] nodes = new int[Math.max(nodeCount - 1, 0)];
+        for (int node = 1; node < nodeCount; node++) {
+            nodes[fill[parents[node]]++] = node;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            sortByValueDesc(nodes, start[node], start[node + 1]);
+        }
+        childNodes = nodes;
+        childStart = start;
+    }
+
+    // 按节点值降序排序，值相同时按节点下标升序，保证输出稳定
+    private void sortByValueDesc(int[] nodes, int from, int to) {
+        while (to - from > 16) {
+            int pivot = nodes[(from + to) >>> 1];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (before(nodes[i], pivot)) {
+                    i++;
+                }
+                while (before(pivot, nodes[j])) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = nodes[i];
+                    nodes[i++] = nodes[j];
+                    nodes[j--] = tmp;
+                }
+            }
+            // 先递归较短的一侧，控制递归深度
+            if (j + 1 - from < to - i) {
+                sortByValueDesc(nodes, from, j + 1);
+                from = i;
+            } else {
+                sortByValueDesc(nodes, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int node = nodes[i];
+            int j = i - 1;
+            while (j >= from && before(node, nodes[j])) {
+                nodes[j + 1] = nodes[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+        }
+    }
+
+    private boolean before(int a, int b) {
+        long valueA = getValue(a);
+        long valueB = getValue(b);
+        return valueA != valueB ? valueA > valueB : a < b;
+    }
+
+    // 显式请求时才导出折叠格式（每行 "根;...;叶子 值"）
+    public void writeFolded(Writer writer, SymbolResolver resolver) throws IOException {
+        int[] path = new int[maxDepth + 1];
+        StringBuilder line = new StringBuilder();
+        for (int node = 1; node < nodeCount; node++) {
+            if (!terminal[node]) {
+                continue;
+            }
+            int depth = 0;
+            for (int current = node; current != ROOT; current = parents[current]) {
+                path[depth++] = frames[current];
+            }
+            line.setLength(0);
+            for (int i = depth - 1; i >= 0; i--) {
+                line.append(resolver.getFrameName(path[i]));
+                if (i > 0) {
+                    line.append(';');
+                }
+            }
+            line.append(' ').append(getSelfValue(node)).append('\n');
+            writer.write(line.toString());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// 面向大体积 SVG 的流式写入器
+// 内容先编码进一块大的 ByteBuffer，写满后整块交给 NIO 通道；常量片段可预先编码成 byte[]，
+// 数字直接按十进制写入字节，避免逐个节点的字符串拼接和 String.format
+public class SvgWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+
+    public SvgWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public static SvgWriter open(String path) throws IOException {
+        return new SvgWriter(FileChannel.open(Path.of(path), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    public static SvgWriter open(OutputStream outputStream) {
+        return new SvgWriter(Channels.newChannel(outputStream));
+    }
+
+    // 预先编码常量片段
+    public static byte[] fragment(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public SvgWriter write(byte[] fragment) throws IOException {
+        if (fragment.length > buffer.remaining()) {
+            flushBuffer();
+            if (fragment.length > buffer.capacity()) {
+                channel.write(ByteBuffer.wrap(fragment));
+                return this;
+            }
+        }
+        buffer.put(fragment);
+        return this;
+    }
+
+    // 写入原样文本，调用方保证其中不含需要转义的字符
+    public SvgWriter write(String text) throws IOException {
+        return writeChars(text, false);
+    }
+
+    // 写入 XML 转义后的文本
+    public SvgWriter writeEscaped(String text) throws IOException {
+        return writeChars(text, true);
+    }
+
+    public SvgWriter writeLong(long value) throws IOException {
+        ensure(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return write(Long.toString(value));
+            }
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+        return this;
+    }
+
+    // 按固定小数位写入，等价于 String.format("%.Nf")，decimals 取 0 到 6
+    public SvgWriter writeFixed(double value, int decimals) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return write("0");
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            ensure(1);
+            buffer.put((byte) '-');
+        }
+        writeLong(scaled / scale);
+        if (decimals > 0) {
+            ensure(decimals + 1);
+            buffer.put((byte) '.');
+            long fraction = scaled % scale;
+            for (long divisor = scale / 10; divisor > 0; divisor /= 10) {
+                buffer.put((byte) ('0' + (fraction / divisor) % 10));
+            }
+        }
+        return this;
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private SvgWriter writeChars(String text, boolean escape) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            // 转义实体最长 6 字节，UTF-8 编码最长 4 字节
+            ensure(6);
+            if (escape && c < 0x80) {
+                switch (c) {
+                    case '&': putAscii("&amp;"); continue;
+                    case '<': putAscii("&lt;"); continue;
+                    case '>': putAscii("&gt;"); continue;
+                    case '"': putAscii("&quot;"); continue;
+                    case '\'': putAscii("&apos;"); continue;
+                    default: break;
+                }
+            }
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return this;
+    }
+
+    private void putAscii(String entity) {
+        for (int i = 0; i < entity.length(); i++) {
+            buffer.put((byte) entity.charAt(i));
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
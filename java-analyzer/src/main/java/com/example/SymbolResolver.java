@@ -0,0 +1,333 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// 每个 profile 只构建一次的符号解析表
+// 将 location id 映射为预先解析好的帧数组，帧下标对应按函数名去重后的名称表。
+// id 连续时使用数组直接寻址，id 稀疏（例如其他工具合并后的 profile）时退化为哈希查找，
+// 因此每个样本的每一层只需要几次基本类型数组读取。
+// 展开内联帧时，每个 location 的所有 line 在构建时一次性展开进同一个 CSR 数组，聚合时的开销与不展开相同。
+// profile 头部的 drop_frames / keep_frames 在解析调用栈时应用，正则对每个函数名只求值一次
+public class SymbolResolver {
+    private static final Logger logger = Logger.getLogger(SymbolResolver.class.getName());
+    // id 上限不超过数量的这个倍数时使用直接寻址数组
+    private static final int DENSE_FACTOR = 4;
+
+    private final ProfileData profile;
+    private final IdIndex functionIndex;
+    private final IdIndex locationIndex;
+    private final int[] locationFrameStart;    // CSR 偏移，长度为 location 数 + 1
+    private final int[] locationFrames;
+    private final String[] frameNames;
+    private final Map<String, Integer> frameIndex;
+    // 匹配 drop_frames 且不匹配 keep_frames 的帧，profile 未设置 drop_frames 时为 null
+    private final BitSet droppedFrames;
+
+    public SymbolResolver(ProfileData profile) {
+        this(profile, false, Granularity.FUNCTIONS);
+    }
+
+    // inlineFrames 为 true 时 Location 的每条 line 各成一帧：line[0] 是最内层的内联函数，最后一条是实际的调用方；
+    // granularity 决定帧的粒度，即哪些 line 被合并为同一帧
+    public SymbolResolver(ProfileData profile, boolean inlineFrames, Granularity granularity) {
+        this.profile = profile;
+
+        long[] functionIds = new long[profile.getFunctionCount()];
+        for (int i = 0; i < functionIds.length; i++) {
+            functionIds[i] = profile.getFunctionId(i);
+        }
+        this.functionIndex = new IdIndex(functionIds);
+
+        long[] locationIds = new long[profile.getLocationCount()];
+        for (int i = 0; i < locationIds.length; i++) {
+            locationIds[i] = profile.getLocationId(i);
+        }
+        this.locationIndex = new IdIndex(locationIds);
+
+        // 按函数名驻留，名称相同的不同 Function 共用一个名称下标；
+        // 再按 (名称下标, 文件名的字符串下标) 打包成 long 驻留出 "函数+文件" 下标，粒度更细的键都以它为基础
+        Map<String, Integer> internedNames = new HashMap<>();
+        List<String> functionNames = new ArrayList<>();
+        int[] functionNameIds = new int[functionIds.length];
+        LongIntHashMap fileFunctionIndex = new LongIntHashMap(functionIds.length);
+        IntArrayList fileFunctionNames = new IntArrayList();
+        LongArrayList fileFunctionFiles = new LongArrayList();
+        int[] functionFileFunctions = new int[functionIds.length];
+        for (int i = 0; i < functionIds.length; i++) {
+            String name = profile.getString(profile.getFunctionName(i));
+            Integer nameId = internedNames.get(name);
+            if (nameId == null) {
+                nameId = functionNames.size();
+                internedNames.put(name, nameId);
+                functionNames.add(name);
+            }
+            functionNameIds[i] = nameId;
+
+            long filename = profile.getFunctionFilename(i);
+            long key = ((long) nameId << 32) | (filename & 0xFFFFFFFFL);
+            int fileFunction = fileFunctionIndex.get(key, -1);
+            if (fileFunction < 0) {
+                fileFunction = fileFunctionNames.size();
+                fileFunctionIndex.put(key, fileFunction);
+                fileFunctionNames.add(nameId);
+                fileFunctionFiles.add(filename);
+            }
+            functionFileFunctions[i] = fileFunction;
+        }
+
+        // 帧键均为打包的 long：函数为名称下标，函数+文件为其驻留下标，行为 (函数+文件, 行号)，
+        // 地址为 Location.address（内联的各条 line 按 line 序号分表）；键只在构建时求值一次
+        FrameTable table = new FrameTable();
+        LongIntHashMap frameKeys = new LongIntHashMap();
+        List<LongIntHashMap> addressFrames = new ArrayList<>();
+        if (granularity == Granularity.FUNCTIONS) {
+            // 按函数聚合时帧下标即名称下标，与 Function 表的顺序一致
+            for (int nameId = 0; nameId < functionNames.size(); nameId++) {
+                frameKeys.put(nameId, table.add(nameId, functionNames.get(nameId)));
+            }
+        }
+
+        // 默认每个 location 只取第一条 line 对应的函数；帧按从叶子到根的顺序排列，与 line 的顺序一致
+        IntArrayList frames = new IntArrayList(locationIds.length);
+        this.locationFrameStart = new int[locationIds.length + 1];
+        for (int location = 0; location < locationIds.length; location++) {
+            int lineCount = inlineFrames ? profile.getLocationLineCount(location)
+                : Math.min(profile.getLocationLineCount(location), 1);
+            long address = profile.getLocationAddress(location);
+            for (int line = 0; line < lineCount; line++) {
+                int function = functionIndex.get(profile.getLocationLineFunctionId(location, line));
+                if (function < 0) {
+                    continue;
+                }
+                int nameId = functionNameIds[function];
+                int fileFunction = functionFileFunctions[function];
+                long lineNumber = profile.getLocationLineNumber(location, line);
+                LongIntHashMap index = frameKeys;
+                long key;
+                switch (granularity) {
+                    case FUNCTIONS:
+                        key = nameId;
+                        break;
+                    case FILEFUNCTIONS:
+                        key = fileFunction;
+                        break;
+                    case ADDRESSES:
+                        if (address != 0) {
+                            while (addressFrames.size() <= line) {
+                                addressFrames.add(new LongIntHashMap());
+                            }
+                            index = addressFrames.get(line);
+                            key = address;
+                        } else {
+                            // 没有地址的 location 退化为按行
+                            key = ((long) fileFunction << 32) | (lineNumber & 0xFFFFFFFFL);
+                        }
+                        break;
+                    default:
+                        key = ((long) fileFunction << 32) | (lineNumber & 0xFFFFFFFFL);
+                        break;
+                }
+                int frame = index.get(key, -1);
+                if (frame < 0) {
+                    String file = profile.getString(fileFunctionFiles.get(fileFunction));
+                    frame = table.add(nameId, frameName(granularity, functionNames.get(nameId), file, lineNumber,
+                        index == frameKeys ? 0 : address));
+                    index.put(key, frame);
+                }
+                frames.add(frame);
+            }
+            locationFrameStart[location + 1] = frames.size();
+        }
+        this.locationFrames = frames.toArray();
+        this.frameNames = table.names.toArray(new String[0]);
+        this.frameIndex = table.index;
+        this.droppedFrames = droppedFrames(profile, functionNames, table.functionNames.toArray());
+    }
+
+    // 与 pprof 的节点名称一致：函数名、函数名 文件、函数名 文件:行号、0x地址 函数名 文件:行号
+    private static String frameName(Granularity granularity, String name, String file, long line, long address) {
+        if (granularity == Granularity.FUNCTIONS) {
+            return name;
+        }
+        StringBuilder frameName = new StringBuilder();
+        if (address != 0) {
+            frameName.append("0x").append(Long.toHexString(address)).append(' ');
+        }
+        frameName.append(name);
+        if (!file.isEmpty() || granularity != Granularity.FILEFUNCTIONS) {
+            frameName.append(' ').append(file);
+        }
+        if (granularity != Granularity.FILEFUNCTIONS) {
+            frameName.append(':').append(line);
+        }
+        return frameName.toString();
+    }
+
+    // 与 pprof 相同，drop_frames 和 keep_frames 要求完整匹配函数名；正则无效时忽略并记录警告。
+    // 正则按函数名求值，再按 frameFunctions（帧 -> 函数名下标）展开到帧，粒度更细时也不会重复求值
+    private static BitSet droppedFrames(ProfileData profile, List<String> functionNames, int[] frameFunctions) {
+        String drop = profile.getString(profile.getDropFrames());
+        if (drop.isEmpty()) {
+            return null;
+        }
+        String keep = profile.getString(profile.getKeepFrames());
+        Pattern dropPattern;
+        Pattern keepPattern;
+        try {
+            dropPattern = Pattern.compile("^(" + drop + ")$");
+            keepPattern = keep.isEmpty() ? null : Pattern.compile("^(" + keep + ")$");
+        } catch (PatternSyntaxException e) {
+            logger.warning("忽略无效的 drop_frames/keep_frames: " + e.getMessage());
+            return null;
+        }
+        boolean[] droppedNames = new boolean[functionNames.size()];
+        for (int i = 0; i < droppedNames.length; i++) {
+            String name = functionNames.get(i);
+            droppedNames[i] = dropPattern.matcher(name).matches()
+                && (keepPattern == null || !keepPattern.matcher(name).matches());
+        }
+        BitSet dropped = new BitSet(frameFunctions.length);
+        for (int frame = 0; frame < frameFunctions.length; frame++) {
+            if (droppedNames[frameFunctions[frame]]) {
+                dropped.set(frame);
+            }
+        }
+        return dropped.isEmpty() ? null : dropped;
+    }
+
+    public ProfileData getProfile() {
+        return profile;
+    }
+
+    public int getFrameCount() {
+        return frameNames.length;
+    }
+
+    public String getFrameName(int frame) {
+        return frameNames[frame];
+    }
+
+    // function id 对应的 Function 下标（ProfileData 中的顺序），不存在时返回 -1
+    public int getFunctionIndex(long functionId) {
+        return functionIndex.get(functionId);
+    }
+
+    // location id 对应的 Location 下标，不存在时返回 -1
+    public int getLocationIndex(long locationId) {
+        return locationIndex.get(locationId);
+    }
+
+    // 函数名对应的帧下标，不存在时返回 -1
+    public int getFrameIndex(String name) {
+        Integer frame = frameIndex.get(name);
+        return frame != null ? frame : -1;
+    }
+
+    // 解析一个调用栈，按从叶子到根的顺序写入 out，返回帧数；
+    // 已按 drop_frames 裁剪：从根向叶子方向第一个非丢弃帧之后，遇到的第一个丢弃帧连同其下的所有帧都被去掉
+    public int resolveStack(StackTable stacks, int stack, IntArrayList out) {
+        out.clear();
+        int depth = stacks.getDepth(stack);
+        for (int i = 0; i < depth; i++) {
+            int location = locationIndex.get(stacks.getLocationId(stack, i));
+            if (location < 0) {
+                continue;
+            }
+            for (int j = locationFrameStart[location]; j < locationFrameStart[location + 1]; j++) {
+                out.add(locationFrames[j]);
+            }
+        }
+        if (droppedFrames != null) {
+            dropFrames(out);
+        }
+        return out.size();
+    }
+
+    // 根附近连续的丢弃帧保留，避免整个调用栈被裁空
+    private void dropFrames(IntArrayList frames) {
+        boolean foundUser = false;
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            if (!droppedFrames.get(frames.get(i))) {
+                foundUser = true;
+            } else if (foundUser) {
+                int removed = i + 1;
+                for (int j = removed; j < frames.size(); j++) {
+                    frames.set(j - removed, frames.get(j));
+                }
+                frames.truncate(frames.size() - removed);
+                return;
+            }
+        }
+    }
+
+    // 帧的粒度，与 go tool pprof 的 -functions、-filefunctions、-lines、-addresses 对应
+    public enum Granularity {
+        FUNCTIONS, FILEFUNCTIONS, LINES, ADDRESSES
+    }
+
+    // 已驻留的帧：显示名称和所属函数名下标，名称只在帧第一次出现时生成
+    // 帧按显示名称驻留：键不同但名称相同的帧（例如字符串表中重复的文件名）合并为同一帧，
+    // 与 pprof 按节点信息合并一致，名称与帧下标一一对应
+    private static class FrameTable {
+        final List<String> names = new ArrayList<>();
+        final IntArrayList functionNames = new IntArrayList();
+        final Map<String, Integer> index = new HashMap<>();
+
+        int add(int functionName, String name) {
+            Integer frame = index.get(name);
+            if (frame != null) {
+                return frame;
+            }
+            index.put(name, names.size());
+            names.add(name);
+            functionNames.add(functionName);
+            return names.size() - 1;
+        }
+    }
+
+    // id -> 下标：id 连续时直接寻址，否则使用哈希表
+    private static class IdIndex {
+        private final int[] dense;
+        private final LongIntHashMap sparse;
+
+        IdIndex(long[] ids) {
+            long maxId = 0;
+            boolean usable = true;
+            for (long id : ids) {
+                if (id <= 0) {
+                    usable = false;
+                }
+                maxId = Math.max(maxId, id);
+            }
+            if (usable && maxId <= (long) ids.length * DENSE_FACTOR + 16) {
+                dense = new int[(int) maxId + 1];
+                Arrays.fill(dense, -1);
+                for (int i = 0; i < ids.length; i++) {
+                    dense[(int) ids[i]] = i;
+                }
+                sparse = null;
+            } else {
+                dense = null;
+                sparse = new LongIntHashMap(ids.length);
+                for (int i = 0; i < ids.length; i++) {
+                    sparse.put(ids[i], i);
+                }
+            }
+        }
+
+        int get(long id) {
+            if (dense != null) {
+                return id >= 0 && id < dense.length ? dense[(int) id] : -1;
+            }
+            return sparse.get(id, -1);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example;
+
+import java.io.IOException;
+
+// 按 sample_type 的单位格式化样本值
+// 时间类单位按总量选择 s/ms/us/ns，同一报表中的所有值使用同一个显示单位，便于列对齐和比较；
+// 字节与 pprof 一样按每个值的大小以 1024 进位选择 B/kB/MB/GB/TB，避免小值全部显示为 0.00GB；
+// 其余单位（count、objects 等）按整数输出
+public class ValueFormatter {
+    private static final String[] TIME_SUFFIXES = {"ns", "us", "ms", "s"};
+    private static final String[] BYTE_SUFFIXES = {"B", "kB", "MB", "GB", "TB"};
+
+    private final String unit;
+    private final double divisor;
+    private final String suffix;
+    private final int decimals;
+    private final boolean time;
+    private final byte[] suffixBytes;
+
+    private ValueFormatter(String unit, double divisor, String suffix, int decimals, boolean time) {
+        this.unit = unit;
+        this.divisor = divisor;
+        this.suffix = suffix;
+        this.decimals = decimals;
+        this.time = time;
+        this.suffixBytes = SvgWriter.fragment(suffix);
+    }
+
+    // total 为报表中的最大值（通常是总量），决定时间类的显示单位
+    public static ValueFormatter forUnit(String unit, double total) {
+        double nanos = nanosPerUnit(unit);
+        if (nanos > 0) {
+            double totalNanos = Math.abs(total) * nanos;
+            int scale = 0;
+            while (scale < TIME_SUFFIXES.length - 1 && totalNanos >= 1000) {
+                totalNanos /= 1000;
+                scale++;
+            }
+            return new ValueFormatter(unit, Math.pow(1000, scale) / nanos, TIME_SUFFIXES[scale], 2, true);
+        }
+        return new ValueFormatter(unit, 1, "", 0, false);
+    }
+
+    // 时间类单位对应的纳秒数，其他单位返回 0
+    static double nanosPerUnit(String unit) {
+        switch (unit) {
+            case "nanoseconds": return 1;
+            case "microseconds": return 1e3;
+            case "milliseconds": return 1e6;
+            case "seconds": return 1e9;
+            default: return 0;
+        }
+    }
+
+    // 原始单位，例如 nanoseconds、bytes、count
+    public String getUnit() {
+        return unit;
+    }
+
+    public boolean isTime() {
+        return time;
+    }
+
+    public String format(double value) {
+        if (unit.equals("bytes")) {
+            double bytes = value;
+            int scale = 0;
+            while (scale < BYTE_SUFFIXES.length - 1 && Math.abs(bytes) >= 1024) {
+                bytes /= 1024;
+                scale++;
+            }
+            return scale == 0 ? String.format("%.0fB", bytes) : String.format("%.2f%s", bytes, BYTE_SUFFIXES[scale]);
+        }
+        return String.format("%." + decimals + "f%s", value / divisor, suffix);
+    }
+
+    // 与 format 相同的文本直接写入 SVG；显示单位固定时不经过 String.format
+    public void writeTo(SvgWriter writer, double value) throws IOException {
+        if (unit.equals("bytes")) {
+            writer.write(format(value));
+            return;
+        }
+        writer.writeFixed(value / divisor, decimals).write(suffixBytes);
+    }
+}
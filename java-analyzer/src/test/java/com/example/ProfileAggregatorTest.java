@@ -0,0 +1,58 @@
+package com.example;
+
+import com.google.perftools.profiles.ProfileProto.Function;
+import com.google.perftools.profiles.ProfileProto.Line;
+import com.google.perftools.profiles.ProfileProto.Location;
+import com.google.perftools.profiles.ProfileProto.Profile;
+import com.google.perftools.profiles.ProfileProto.Sample;
+import com.google.perftools.profiles.ProfileProto.ValueType;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProfileAggregatorTest {
+    // 两个样本的调用栈都是 A、B 交替递归：叶子为 A 的 A B A B（值 3）和叶子为 B 的 B A B A（值 4）
+    private static final long FIRST_VALUE = 3;
+    private static final long SECOND_VALUE = 4;
+
+    @Test
+    public void recursiveFramesCountOncePerSample() throws IOException {
+        for (int parallelism : new int[] {1, 4}) {
+            ProfileAggregator aggregator = new ProfileAggregator(new SymbolResolver(recursiveProfile()));
+            aggregator.setParallelism(parallelism);
+            AggregatedProfile aggregate = aggregator.aggregate();
+
+            long total = FIRST_VALUE + SECOND_VALUE;
+            // 每个样本都经过 A 和 B，两者的累积值都等于样本总值，不因递归重复计入
+            assertEquals(total, (long) aggregate.getCumulativeTimes().get("A"));
+            assertEquals(total, (long) aggregate.getCumulativeTimes().get("B"));
+            assertEquals(FIRST_VALUE, (long) aggregate.getSelfTimes().get("A"));
+            assertEquals(SECOND_VALUE, (long) aggregate.getSelfTimes().get("B"));
+            // 总量是样本值之和，而不是各函数累积值之和
+            assertEquals(total, aggregate.getTotalSamples());
+        }
+    }
+
+    private static ProfileData recursiveProfile() throws IOException {
+        Profile.Builder profile = Profile.newBuilder()
+            .addStringTable("")
+            .addStringTable("samples")
+            .addStringTable("count")
+            .addStringTable("A")
+            .addStringTable("B")
+            .addSampleType(ValueType.newBuilder().setType(1).setUnit(2));
+        for (int id = 1; id <= 2; id++) {
+            profile.addFunction(Function.newBuilder().setId(id).setName(id + 2));
+            profile.addLocation(Location.newBuilder().setId(id).addLine(Line.newBuilder().setFunctionId(id)));
+        }
+        // location 1 为 A，2 为 B；location_id 按从叶子到根的顺序排列
+        profile.addSample(Sample.newBuilder().addValue(FIRST_VALUE)
+            .addLocationId(1).addLocationId(2).addLocationId(1).addLocationId(2));
+        profile.addSample(Sample.newBuilder().addValue(SECOND_VALUE)
+            .addLocationId(2).addLocationId(1).addLocationId(2).addLocationId(1));
+        return ProfileData.read(new ByteArrayInputStream(profile.build().toByteArray()));
+    }
+}
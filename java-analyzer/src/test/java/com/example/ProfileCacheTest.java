@@ -0,0 +1,104 @@
+package com.example;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writtenColumnsLoadBackUnchanged() throws IOException {
+        ProfileData profile = ProfileFixtures.cpuProfile(0);
+        byte[] hash = new byte[32];
+        hash[0] = 1;
+        Path cacheFile = folder.getRoot().toPath().resolve("cpu.colcache");
+        ProfileCache.write(profile, hash, cacheFile);
+
+        ProfileFixtures.assertSameProfile(profile, ProfileCache.load(cacheFile, hash));
+    }
+
+    // 缓存头部的哈希与源文件不一致时视为未命中
+    @Test
+    public void hashMismatchIsAMiss() throws IOException {
+        byte[] hash = new byte[32];
+        Path cacheFile = folder.getRoot().toPath().resolve("cpu.colcache");
+        ProfileCache.write(ProfileFixtures.cpuProfile(0), hash, cacheFile);
+
+        byte[] other = hash.clone();
+        other[31] = 1;
+        assertNull(ProfileCache.load(cacheFile, other));
+    }
+
+    // 第一次读取解析源文件并写入缓存，第二次从缓存读取，两次结果与源文件一致
+    @Test
+    public void secondReadComesFromTheCache() throws IOException {
+        ProfileData profile = ProfileFixtures.cpuProfile(0);
+        Path source = folder.getRoot().toPath().resolve("cpu.prof");
+        new ProfileEncoder(profile).writeGzip(source);
+        Path directory = folder.newFolder("cache").toPath();
+        ProfileCache cache = new ProfileCache(directory, Long.MAX_VALUE);
+
+        ProfileFixtures.assertSameProfile(profile, cache.read(source));
+        assertEquals(1, countCacheFiles(directory));
+        ProfileFixtures.assertSameProfile(profile, cache.read(source));
+        assertEquals(1, countCacheFiles(directory));
+    }
+
+    // 源文件被改写后大小或修改时间随之变化，不再沿用记录的哈希
+    @Test
+    public void rewrittenSourceIsHashedAgain() throws IOException {
+        Path source = folder.getRoot().toPath().resolve("cpu.prof");
+        new ProfileEncoder(ProfileFixtures.cpuProfile(0)).writeGzip(source);
+        Path directory = folder.newFolder("cache").toPath();
+        ProfileCache cache = new ProfileCache(directory, Long.MAX_VALUE);
+        cache.read(source);
+
+        ProfileData rewritten = ProfileFixtures.cpuProfile(100);
+        new ProfileEncoder(rewritten).writeGzip(source);
+        Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 1000));
+        ProfileFixtures.assertSameProfile(rewritten, cache.read(source));
+        assertEquals(2, countCacheFiles(directory));
+        // 同一路径只有一个索引文件
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.toString().endsWith(".index")).count());
+        }
+    }
+
+    // 超出大小上限时删除修改时间最早的缓存文件，刚写入的保留
+    @Test
+    public void oldestEntryIsEvictedOverTheLimit() throws IOException {
+        Path first = folder.getRoot().toPath().resolve("first.prof");
+        Path second = folder.getRoot().toPath().resolve("second.prof");
+        new ProfileEncoder(ProfileFixtures.cpuProfile(0)).writeGzip(first);
+        new ProfileEncoder(ProfileFixtures.cpuProfile(100)).writeGzip(second);
+        Path directory = folder.newFolder("cache").toPath();
+        new ProfileCache(directory, Long.MAX_VALUE).read(first);
+        Path firstCache = directory.resolve(ProfileCache.toHex(ProfileCache.hash(first)) + ".colcache");
+        Files.setLastModifiedTime(firstCache, FileTime.fromMillis(0));
+
+        // 上限只够容纳一个半缓存文件
+        new ProfileCache(directory, Files.size(firstCache) * 3 / 2).read(second);
+        assertEquals(1, countCacheFiles(directory));
+        assertFalse(Files.exists(firstCache));
+        assertTrue(Files.exists(directory.resolve(ProfileCache.toHex(ProfileCache.hash(second)) + ".colcache")));
+    }
+
+    private static long countCacheFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".colcache")).count();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProfileEncoderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void encodedProfileDecodesToTheSameData() throws IOException {
+        ProfileData profile = ProfileFixtures.cpuProfile(0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ProfileEncoder(profile).write(bytes);
+
+        ProfileFixtures.assertSameProfile(profile, ProfileData.read(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void gzipFileRoundTrip() throws IOException {
+        ProfileData profile = ProfileFixtures.cpuProfile(0);
+        Path file = folder.getRoot().toPath().resolve("cpu.prof");
+        new ProfileEncoder(profile).writeGzip(file);
+
+        ProfileFixtures.assertSameProfile(profile, PprofAnalyzer.readProfile(file.toString()));
+    }
+
+    // 两个输入的 id 和字符串下标不同，合并后相同调用栈的值逐列相加，且结果经编码、解码后不变
+    @Test
+    public void mergeSumsIdenticalStacksAcrossSymbolSpaces() throws IOException {
+        ProfileData left = ProfileFixtures.cpuProfile(0);
+        ProfileData right = ProfileFixtures.cpuProfile(100);
+        ProfileData merged = ProfileMerger.merge(left, right);
+
+        Map<String, List<Long>> expected = ProfileFixtures.stacksByName(left);
+        for (List<Long> values : expected.values()) {
+            values.replaceAll(value -> value * 2);
+        }
+        assertEquals(expected, ProfileFixtures.stacksByName(merged));
+        assertEquals(Arrays.asList(10L, 100_000_000L), expected.get("helper;compute;compute;main; thread=worker"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ProfileEncoder(merged).write(bytes);
+        ProfileFixtures.assertSameProfile(merged, ProfileData.read(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
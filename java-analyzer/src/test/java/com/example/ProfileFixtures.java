@@ -0,0 +1,221 @@
+package com.example;
+
+import com.google.perftools.profiles.ProfileProto.Function;
+import com.google.perftools.profiles.ProfileProto.Label;
+import com.google.perftools.profiles.ProfileProto.Line;
+import com.google.perftools.profiles.ProfileProto.Location;
+import com.google.perftools.profiles.ProfileProto.Mapping;
+import com.google.perftools.profiles.ProfileProto.Profile;
+import com.google.perftools.profiles.ProfileProto.Sample;
+import com.google.perftools.profiles.ProfileProto.ValueType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// 测试用的小型 profile 和逐字段比较
+final class ProfileFixtures {
+    private ProfileFixtures() {
+    }
+
+    // 两列 sample_type、一个 Mapping、三个 Function，其中一个 Location 带内联帧，第一个调用栈带相同标签出现两次，
+    // 另有字符串标签和带单位的数值标签；
+    // idOffset 平移所有 id，并在字符串表开头插入未使用的字符串，使同一内容落在不同的符号空间
+    static ProfileData cpuProfile(long idOffset) throws IOException {
+        List<String> strings = new ArrayList<>();
+        strings.add("");
+        if (idOffset != 0) {
+            strings.add("unused-" + idOffset);
+        }
+        Profile.Builder profile = Profile.newBuilder()
+            .addSampleType(valueType(strings, "samples", "count"))
+            .addSampleType(valueType(strings, "cpu", "nanoseconds"))
+            .setPeriodType(valueType(strings, "cpu", "nanoseconds"))
+            .setPeriod(10_000_000L)
+            .setTimeNanos(1_700_000_000_000_000_000L)
+            .setDurationNanos(10_000_000_000L)
+            .setDropFrames(intern(strings, "runtime\\..*"))
+            .setKeepFrames(intern(strings, "runtime\\.main"))
+            .addComment(intern(strings, "fixture"))
+            .setDefaultSampleType(intern(strings, "cpu"))
+            .setDocUrl(intern(strings, "https://example.com/doc"));
+        profile.addMapping(Mapping.newBuilder().setId(1 + idOffset).setMemoryStart(0x400000).setMemoryLimit(0x500000)
+            .setFileOffset(0x1000).setFilename(intern(strings, "/bin/app")).setBuildId(intern(strings, "build-1"))
+            .setHasFunctions(true).setHasFilenames(true));
+
+        String[][] functions = {{"main", "main.go"}, {"compute", "main.go"}, {"helper", "lib.go"}};
+        for (int i = 0; i < functions.length; i++) {
+            profile.addFunction(Function.newBuilder().setId(i + 1 + idOffset)
+                .setName(intern(strings, functions[i][0])).setSystemName(intern(strings, "sys." + functions[i][0]))
+                .setFilename(intern(strings, functions[i][1])).setStartLine(10 * (i + 1)));
+        }
+        profile.addLocation(location(1 + idOffset, idOffset, 0x401000).addLine(line(1 + idOffset, 12)));
+        profile.addLocation(location(2 + idOffset, idOffset, 0x402000).addLine(line(2 + idOffset, 23)));
+        // line[0] 是内联进 compute 的 helper
+        profile.addLocation(location(3 + idOffset, idOffset, 0x403000)
+            .addLine(line(3 + idOffset, 31)).addLine(line(2 + idOffset, 25)));
+
+        Label worker = Label.newBuilder().setKey(intern(strings, "thread")).setStr(intern(strings, "worker")).build();
+        Label bytes = Label.newBuilder().setKey(intern(strings, "size")).setNum(1024)
+            .setNumUnit(intern(strings, "bytes")).build();
+        profile.addSample(sample(new long[] {3, 2, 1}, idOffset, 2, 20_000_000L).addLabel(worker));
+        profile.addSample(sample(new long[] {2, 1}, idOffset, 1, 10_000_000L));
+        profile.addSample(sample(new long[] {3, 2, 1}, idOffset, 3, 30_000_000L).addLabel(worker));
+        profile.addSample(sample(new long[] {1}, idOffset, 5, 50_000_000L).addLabel(bytes));
+
+        profile.addAllStringTable(strings);
+        return ProfileData.read(new ByteArrayInputStream(profile.build().toByteArray()));
+    }
+
+    // 逐字段比较两个 profile，调用栈按 location id 序列比较，与顺序无关
+    static void assertSameProfile(ProfileData expected, ProfileData actual) {
+        assertEquals(expected.getStringCount(), actual.getStringCount());
+        for (int i = 0; i < expected.getStringCount(); i++) {
+            assertEquals(expected.getString(i), actual.getString(i));
+        }
+        assertEquals(expected.getSampleTypeCount(), actual.getSampleTypeCount());
+        for (int i = 0; i < expected.getSampleTypeCount(); i++) {
+            assertEquals(expected.getSampleTypeType(i), actual.getSampleTypeType(i));
+            assertEquals(expected.getSampleTypeUnit(i), actual.getSampleTypeUnit(i));
+        }
+        assertEquals(expected.getDropFrames(), actual.getDropFrames());
+        assertEquals(expected.getKeepFrames(), actual.getKeepFrames());
+        assertEquals(expected.getTimeNanos(), actual.getTimeNanos());
+        assertEquals(expected.getDurationNanos(), actual.getDurationNanos());
+        assertEquals(expected.getPeriodTypeType(), actual.getPeriodTypeType());
+        assertEquals(expected.getPeriodTypeUnit(), actual.getPeriodTypeUnit());
+        assertEquals(expected.getPeriod(), actual.getPeriod());
+        assertArrayEquals(expected.getComments(), actual.getComments());
+        assertEquals(expected.getDefaultSampleType(), actual.getDefaultSampleType());
+        assertEquals(expected.getDocUrl(), actual.getDocUrl());
+
+        assertEquals(expected.getMappingCount(), actual.getMappingCount());
+        for (int i = 0; i < expected.getMappingCount(); i++) {
+            assertEquals(expected.getMappingId(i), actual.getMappingId(i));
+            assertEquals(expected.getMappingMemoryStart(i), actual.getMappingMemoryStart(i));
+            assertEquals(expected.getMappingMemoryLimit(i), actual.getMappingMemoryLimit(i));
+            assertEquals(expected.getMappingFileOffset(i), actual.getMappingFileOffset(i));
+            assertEquals(expected.getMappingFilename(i), actual.getMappingFilename(i));
+            assertEquals(expected.getMappingBuildId(i), actual.getMappingBuildId(i));
+            assertEquals(expected.getMappingFlags(i), actual.getMappingFlags(i));
+        }
+        assertEquals(expected.getFunctionCount(), actual.getFunctionCount());
+        for (int i = 0; i < expected.getFunctionCount(); i++) {
+            assertEquals(expected.getFunctionId(i), actual.getFunctionId(i));
+            assertEquals(expected.getFunctionName(i), actual.getFunctionName(i));
+            assertEquals(expected.getFunctionSystemName(i), actual.getFunctionSystemName(i));
+            assertEquals(expected.getFunctionFilename(i), actual.getFunctionFilename(i));
+            assertEquals(expected.getFunctionStartLine(i), actual.getFunctionStartLine(i));
+        }
+        assertEquals(expected.getLocationCount(), actual.getLocationCount());
+        for (int i = 0; i < expected.getLocationCount(); i++) {
+            assertEquals(expected.getLocationId(i), actual.getLocationId(i));
+            assertEquals(expected.getLocationMappingId(i), actual.getLocationMappingId(i));
+            assertEquals(expected.getLocationAddress(i), actual.getLocationAddress(i));
+            assertEquals(expected.isLocationFolded(i), actual.isLocationFolded(i));
+            assertEquals(expected.getLocationLineCount(i), actual.getLocationLineCount(i));
+            for (int line = 0; line < expected.getLocationLineCount(i); line++) {
+                assertEquals(expected.getLocationLineFunctionId(i, line), actual.getLocationLineFunctionId(i, line));
+                assertEquals(expected.getLocationLineNumber(i, line), actual.getLocationLineNumber(i, line));
+            }
+        }
+        assertEquals(stacksById(expected), stacksById(actual));
+    }
+
+    // 调用栈的 location id 序列和标签下标 -> 各列的值
+    static Map<String, List<Long>> stacksById(ProfileData profile) {
+        StackTable stacks = profile.getStacks();
+        Map<String, List<Long>> result = new TreeMap<>();
+        for (int stack = 0; stack < stacks.size(); stack++) {
+            long[] ids = new long[stacks.getDepth(stack)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = stacks.getLocationId(stack, i);
+            }
+            StringBuilder key = new StringBuilder(Arrays.toString(ids));
+            for (int i = 0; i < stacks.getLabelCount(stack); i++) {
+                key.append(' ').append(stacks.getLabelKey(stack, i)).append('=').append(stacks.getLabelStr(stack, i))
+                    .append('/').append(stacks.getLabelNum(stack, i)).append('/').append(stacks.getLabelNumUnit(stack, i));
+            }
+            addValues(result, key.toString(), stacks, stack, profile.getSampleTypeCount());
+        }
+        return result;
+    }
+
+    // 调用栈的函数名序列（含内联帧，从叶子到根）和标签 -> 各列的值，与符号空间无关
+    static Map<String, List<Long>> stacksByName(ProfileData profile) {
+        Map<Long, Integer> locations = new HashMap<>();
+        for (int i = 0; i < profile.getLocationCount(); i++) {
+            locations.put(profile.getLocationId(i), i);
+        }
+        Map<Long, String> functions = new HashMap<>();
+        for (int i = 0; i < profile.getFunctionCount(); i++) {
+            functions.put(profile.getFunctionId(i), profile.getString(profile.getFunctionName(i)));
+        }
+        StackTable stacks = profile.getStacks();
+        Map<String, List<Long>> result = new TreeMap<>();
+        for (int stack = 0; stack < stacks.size(); stack++) {
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < stacks.getDepth(stack); i++) {
+                int location = locations.get(stacks.getLocationId(stack, i));
+                for (int line = 0; line < profile.getLocationLineCount(location); line++) {
+                    key.append(functions.get(profile.getLocationLineFunctionId(location, line))).append(';');
+                }
+            }
+            for (int i = 0; i < stacks.getLabelCount(stack); i++) {
+                key.append(' ').append(profile.getString(stacks.getLabelKey(stack, i))).append('=')
+                    .append(stacks.getLabelStr(stack, i) != 0 ? profile.getString(stacks.getLabelStr(stack, i))
+                        : stacks.getLabelNum(stack, i) + profile.getString(stacks.getLabelNumUnit(stack, i)));
+            }
+            addValues(result, key.toString(), stacks, stack, profile.getSampleTypeCount());
+        }
+        return result;
+    }
+
+    private static void addValues(Map<String, List<Long>> result, String key, StackTable stacks, int stack,
+                                  int width) {
+        List<Long> values = result.computeIfAbsent(key, k -> new ArrayList<>());
+        for (int i = 0; i < width; i++) {
+            if (values.size() <= i) {
+                values.add(0L);
+            }
+            values.set(i, values.get(i) + stacks.getValue(stack, i));
+        }
+    }
+
+    private static ValueType.Builder valueType(List<String> strings, String type, String unit) {
+        return ValueType.newBuilder().setType(intern(strings, type)).setUnit(intern(strings, unit));
+    }
+
+    private static Location.Builder location(long id, long idOffset, long address) {
+        return Location.newBuilder().setId(id).setMappingId(1 + idOffset).setAddress(address);
+    }
+
+    private static Line.Builder line(long functionId, long line) {
+        return Line.newBuilder().setFunctionId(functionId).setLine(line);
+    }
+
+    private static Sample.Builder sample(long[] locations, long idOffset, long count, long nanos) {
+        Sample.Builder sample = Sample.newBuilder().addValue(count).addValue(nanos);
+        for (long location : locations) {
+            sample.addLocationId(location + idOffset);
+        }
+        return sample;
+    }
+
+    private static long intern(List<String> strings, String value) {
+        int index = strings.indexOf(value);
+        if (index < 0) {
+            index = strings.size();
+            strings.add(value);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// 固定的真实数据：go-service 生成的 profiling-data/cpu.prof，可用 -Dfixture=<path> 替换
+public class FixturePipelineBenchmark extends PipelineBenchmark {
+    @Override
+    protected byte[] loadProfile() throws IOException {
+        return Files.readAllBytes(Path.of(System.getProperty("fixture", "../profiling-data/cpu.prof")));
+    }
+}
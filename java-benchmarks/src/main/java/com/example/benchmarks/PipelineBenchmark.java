@@ -0,0 +1,118 @@
+package com.example.benchmarks;
+
+import com.example.AggregatedProfile;
+import com.example.CallGraphGenerator;
+import com.example.FlameGraphGenerator;
+import com.example.ProfileAggregator;
+import com.example.ProfileData;
+import com.example.SymbolResolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+// 解析 -> 聚合 -> 渲染 各阶段的基准测试，子类只负责提供 gzip 压缩的 profile 字节
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class PipelineBenchmark {
+    private byte[] gzipped;
+    private byte[] raw;
+    private ProfileData profile;
+    private AggregatedProfile aggregate;
+    private Path outputDir;
+
+    protected abstract byte[] loadProfile() throws IOException;
+
+    @Setup
+    public void setup() throws IOException {
+        gzipped = loadProfile();
+        raw = inflate(gzipped);
+        profile = ProfileData.read(new ByteArrayInputStream(raw));
+        aggregate = new ProfileAggregator(new SymbolResolver(profile)).aggregate();
+        outputDir = Files.createTempDirectory("pprof-bench");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(outputDir.resolve("flamegraph.svg"));
+        Files.deleteIfExists(outputDir.resolve("callgraph.svg"));
+        Files.deleteIfExists(outputDir);
+    }
+
+    // 解压 + 流式解码
+    @Benchmark
+    public ProfileData decode() throws IOException {
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(gzipped), 1 << 16)) {
+            return ProfileData.read(input);
+        }
+    }
+
+    // 只测流式解码，排除解压开销
+    @Benchmark
+    public ProfileData decodeUncompressed() throws IOException {
+        return ProfileData.read(new ByteArrayInputStream(raw));
+    }
+
+    // 符号解析 + 单次遍历聚合
+    @Benchmark
+    public AggregatedProfile aggregate() {
+        return new ProfileAggregator(new SymbolResolver(profile)).aggregate();
+    }
+
+    // 火焰图布局：按值排序每个节点的子节点
+    @Benchmark
+    public AggregatedProfile layout() {
+        aggregate.getTrie().buildChildIndex();
+        return aggregate;
+    }
+
+    // 调用图：过滤、分层布局和 SVG 输出
+    @Benchmark
+    public void callGraph() throws IOException {
+        new CallGraphGenerator(aggregate, outputDir.resolve("callgraph.svg").toString()).generateCallGraph();
+    }
+
+    // 火焰图 SVG 输出
+    @Benchmark
+    public void flameGraphSvg() throws IOException {
+        new FlameGraphGenerator(aggregate, outputDir.resolve("flamegraph.svg").toString()).generateFlameGraph();
+    }
+
+    // 端到端：解码、聚合并输出两张图
+    @Benchmark
+    public void pipeline() throws IOException {
+        ProfileData data = decode();
+        AggregatedProfile result = new ProfileAggregator(new SymbolResolver(data)).aggregate();
+        new FlameGraphGenerator(result, outputDir.resolve("flamegraph.svg").toString()).generateFlameGraph();
+        new CallGraphGenerator(result, outputDir.resolve("callgraph.svg").toString()).generateCallGraph();
+    }
+
+    private static byte[] inflate(byte[] gzipped) throws IOException {
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(gzipped.length * 4);
+            input.transferTo(output);
+            return output.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+// 合成 profile：样本数、不同调用栈数、深度和递归层数可通过 -p 参数调整
+public class SyntheticPipelineBenchmark extends PipelineBenchmark {
+    @Param({"100000", "1000000"})
+    public int samples;
+
+    @Param({"1000", "50000"})
+    public int stacks;
+
+    @Param({"16", "64"})
+    public int depth;
+
+    // 递归调用栈下同一函数出现多次，累积时间仍只计一次
+    @Param({"0"})
+    public int recursion;
+
+    @Override
+    protected byte[] loadProfile() {
+        return new SyntheticProfileGenerator(samples, stacks, depth, 42L, recursion).generateBytes();
+    }
+}
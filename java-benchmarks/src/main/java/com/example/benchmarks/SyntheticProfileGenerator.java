@@ -0,0 +1,141 @@
+package com.example.benchmarks;
+
+import com.google.perftools.profiles.ProfileProto.Function;
+import com.google.perftools.profiles.ProfileProto.Line;
+import com.google.perftools.profiles.ProfileProto.Location;
+import com.google.perftools.profiles.ProfileProto.Mapping;
+import com.google.perftools.profiles.ProfileProto.Profile;
+import com.google.perftools.profiles.ProfileProto.Sample;
+import com.google.perftools.profiles.ProfileProto.ValueType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+// 生成可控规模的 gzip 压缩 CPU profile，用于基准测试
+// 样本数、不同调用栈数和调用栈深度独立可调；调用栈按固定扇出的树形生成，
+// 与真实程序一样共享大量前缀，样本在调用栈之间按偏斜分布，每四个 location 中有一个带内联帧；
+// recursion 大于 0 时每个调用栈根部的两层再重复 recursion 次，模拟直接/间接递归
+public class SyntheticProfileGenerator {
+    private static final long PERIOD_NANOS = 10_000_000L;
+
+    private final int samples;
+    private final int stacks;
+    private final int depth;
+    private final long seed;
+    private final int recursion;
+
+    public SyntheticProfileGenerator(int samples, int stacks, int depth, long seed) {
+        this(samples, stacks, depth, seed, 0);
+    }
+
+    public SyntheticProfileGenerator(int samples, int stacks, int depth, long seed, int recursion) {
+        this.samples = samples;
+        this.stacks = stacks;
+        this.depth = depth;
+        this.seed = seed;
+        this.recursion = recursion;
+    }
+
+    public Profile generate() {
+        Random random = new Random(seed);
+        List<String> strings = new ArrayList<>();
+        strings.add("");
+        Profile.Builder profile = Profile.newBuilder();
+
+        int samplesType = intern(strings, "samples");
+        int countUnit = intern(strings, "count");
+        int cpuType = intern(strings, "cpu");
+        int nanosUnit = intern(strings, "nanoseconds");
+        int fileName = intern(strings, "synthetic.go");
+        profile.addSampleType(ValueType.newBuilder().setType(samplesType).setUnit(countUnit));
+        profile.addSampleType(ValueType.newBuilder().setType(cpuType).setUnit(nanosUnit));
+        profile.setPeriodType(ValueType.newBuilder().setType(cpuType).setUnit(nanosUnit));
+        profile.setPeriod(PERIOD_NANOS);
+        profile.addMapping(Mapping.newBuilder().setId(1).setMemoryStart(0x400000).setMemoryLimit(0x800000)
+            .setFilename(intern(strings, "/synthetic/binary")).setHasFunctions(true));
+
+        // 函数数量随深度增长，保证每层都有足够的候选
+        int functionCount = 256 + depth * 8;
+        for (int i = 1; i <= functionCount; i++) {
+            int name = intern(strings, "pkg" + (i % 17) + ".func" + i);
+            profile.addFunction(Function.newBuilder().setId(i).setName(name).setSystemName(name)
+                .setFilename(fileName).setStartLine(i * 10));
+        }
+        // 每个函数一个 location，id 与函数一一对应
+        for (int i = 1; i <= functionCount; i++) {
+            Location.Builder location = Location.newBuilder().setId(i).setMappingId(1).setAddress(0x400000 + i * 16L);
+            if (i % 4 == 0) {
+                int inlined = (i * 7) % functionCount + 1;
+                location.addLine(Line.newBuilder().setFunctionId(inlined).setLine(inlined * 10 + 3));
+            }
+            location.addLine(Line.newBuilder().setFunctionId(i).setLine(i * 10 + 1));
+            profile.addLocation(location);
+        }
+
+        // 生成不同的调用栈：根附近扇出小、越深扇出越大，形成共享前缀的树
+        long[][] stackTable = new long[stacks][];
+        for (int s = 0; s < stacks; s++) {
+            int stackDepth = Math.max(1, depth / 2 + random.nextInt(depth / 2 + 1));
+            long[] locationIds = new long[stackDepth];
+            long frame = 1;
+            for (int level = 0; level < stackDepth; level++) {
+                int fanout = 2 + level;
+                frame = (frame * 31 + random.nextInt(fanout) + level) % functionCount + 1;
+                // location_id 从叶子到根排列
+                locationIds[stackDepth - 1 - level] = frame;
+            }
+            stackTable[s] = recurse(locationIds);
+        }
+
+        // 样本按偏斜分布落在调用栈上，少数热点调用栈占据大部分样本
+        for (int i = 0; i < samples; i++) {
+            double u = random.nextDouble();
+            int s = (int) (u * u * u * stacks);
+            long count = 1 + random.nextInt(3);
+            Sample.Builder sample = Sample.newBuilder().addValue(count).addValue(count * PERIOD_NANOS);
+            for (long locationId : stackTable[s]) {
+                sample.addLocationId(locationId);
+            }
+            profile.addSample(sample);
+        }
+
+        profile.setDurationNanos(samples * PERIOD_NANOS);
+        profile.addAllStringTable(strings);
+        return profile.build();
+    }
+
+    // 生成 gzip 压缩后的 pprof 字节
+    public byte[] generateBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            generate().writeTo(gzip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // 把根部的两层（只有一层时为该层）在根部一侧重复 recursion 次，例如 A B 变为 A B A B ...
+    private long[] recurse(long[] locationIds) {
+        if (recursion <= 0) {
+            return locationIds;
+        }
+        int cycle = Math.min(2, locationIds.length);
+        long[] recursive = new long[locationIds.length + cycle * recursion];
+        System.arraycopy(locationIds, 0, recursive, 0, locationIds.length);
+        for (int i = locationIds.length; i < recursive.length; i++) {
+            recursive[i] = recursive[i - cycle];
+        }
+        return recursive;
+    }
+
+    private static int intern(List<String> strings, String value) {
+        strings.add(value);
+        return strings.size() - 1;
+    }
+}